@@ -1,69 +1,145 @@
 package com.reactivespring.controller;
 
+import com.reactivespring.domain.BulkResult;
 import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieInfoEvent;
+import com.reactivespring.service.MovieInfoBulkService;
 import com.reactivespring.service.MoviesInfoService;
+import com.reactivespring.stream.StreamSubscriberPolicy;
+import com.reactivespring.tracing.SignalTracer;
+import com.reactivespring.util.EntityTags;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpRequest;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.util.UriComponentsBuilder;
+import org.springframework.web.util.UriUtils;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import reactor.core.publisher.Sinks;
 
 import javax.validation.Valid;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
 
 @RestController
 @RequestMapping("/v1")
 public class MoviesInfoController {
 
     final private MoviesInfoService moviesInfoService;
+    final private MovieInfoBulkService movieInfoBulkService;
+    final private StreamSubscriberPolicy streamSubscriberPolicy;
+    final private SignalTracer signalTracer;
+    final private EntityTags entityTags;
 
-    private Sinks.Many<MovieInfo> moviesInfoSink = Sinks.many().replay().all();
+    @Value("${movieinfos.pagination.max-limit:1000}")
+    private int maxLimit;
 
-    public MoviesInfoController(MoviesInfoService moviesInfoService) {
+    public MoviesInfoController(MoviesInfoService moviesInfoService, MovieInfoBulkService movieInfoBulkService,
+                                StreamSubscriberPolicy streamSubscriberPolicy, SignalTracer signalTracer,
+                                EntityTags entityTags) {
         this.moviesInfoService = moviesInfoService;
+        this.movieInfoBulkService = movieInfoBulkService;
+        this.streamSubscriberPolicy = streamSubscriberPolicy;
+        this.signalTracer = signalTracer;
+        this.entityTags = entityTags;
     }
 
     @GetMapping("/movieinfos")
-    public Flux<MovieInfo> getAllMovieInfos(@RequestParam(value = "year", required = false) Integer year) {
+    public Mono<ResponseEntity<Flux<MovieInfo>>> getAllMovieInfos(@RequestParam(value = "year", required = false) Integer year,
+                                                                  @RequestParam(value = "limit", required = false) Integer limit,
+                                                                  @RequestParam(value = "after", required = false) String after,
+                                                                  @RequestParam(value = "fields", required = false) List<String> fields,
+                                                                  ServerHttpRequest request) {
         if (year != null) {
-            return moviesInfoService.getMovieInfoByYear(year).log();
+            return Mono.just(ResponseEntity.ok(signalTracer.trace("movieinfos.getByYear", moviesInfoService.getMovieInfoByYear(year, fields))));
         }
-        return moviesInfoService.getAllMovieInfos().log();
+
+        int pageSize = limit == null ? maxLimit : Math.max(1, Math.min(limit, maxLimit));
+        Mono<List<MovieInfo>> page = moviesInfoService.getAllMovieInfos(after, pageSize + 1, fields).collectList();
+
+        MediaType contentType = entityTags.negotiate(request.getHeaders().getAccept());
+        return signalTracer.trace("movieinfos.getAll", page.map(movieInfos -> {
+            if (movieInfos.size() <= pageSize) {
+                return tagged(movieInfos, contentType)
+                        .body(Flux.fromIterable(movieInfos));
+            }
+            List<MovieInfo> pageContent = movieInfos.subList(0, pageSize);
+            String next = UriComponentsBuilder.fromHttpRequest(request)
+                    .replaceQueryParam("limit", pageSize)
+                    .replaceQueryParam("after", UriUtils.encodeQueryParam(pageContent.get(pageSize - 1).getMovieInfoId(), StandardCharsets.UTF_8))
+                    .build(true)
+                    .toUriString();
+            return tagged(pageContent, contentType)
+                    .header(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"")
+                    .body(Flux.fromIterable(pageContent));
+        }));
+    }
+
+    @GetMapping(value = "/movieinfos", params = "ids", produces = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.APPLICATION_JSON_VALUE})
+    public Flux<MovieInfo> getMovieInfosByIds(@RequestParam("ids") List<String> ids,
+                                              @RequestParam(value = "fields", required = false) List<String> fields) {
+        return signalTracer.trace("movieinfos.getByIds", moviesInfoService.getMovieInfosByIds(ids, fields));
+    }
+
+    @PostMapping(value = "/movieinfos/batch", produces = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.APPLICATION_JSON_VALUE})
+    public Flux<MovieInfo> getMovieInfosByIdsBatch(@RequestBody List<String> ids,
+                                                   @RequestParam(value = "fields", required = false) List<String> fields) {
+        return signalTracer.trace("movieinfos.batch", moviesInfoService.getMovieInfosByIds(ids, fields));
     }
 
     @GetMapping("/movieinfos/{id}")
-    public Mono<ResponseEntity<MovieInfo>> getMovieInfosById(@PathVariable String id) {
-        return moviesInfoService.getAllMovieInfosById(id)
-                .map(ResponseEntity.status(HttpStatus.OK)::body)
-                .switchIfEmpty(Mono.just(ResponseEntity.status(HttpStatus.NOT_FOUND).build()))
-                .log();
+    public Mono<ResponseEntity<MovieInfo>> getMovieInfosById(@PathVariable String id,
+                                                             @RequestParam(value = "fields", required = false) List<String> fields,
+                                                             ServerHttpRequest request) {
+        MediaType contentType = entityTags.negotiate(request.getHeaders().getAccept());
+        return signalTracer.trace("movieinfos.getById", moviesInfoService.getAllMovieInfosById(id, fields)
+                .map(movieInfo -> tagged(movieInfo, contentType).body(movieInfo))
+                .switchIfEmpty(Mono.just(ResponseEntity.status(HttpStatus.NOT_FOUND).build())));
     }
 
     @GetMapping(value = "/movieinfos/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
     public Flux<MovieInfo> getMovieInfosStream() {
-        return moviesInfoSink.asFlux().log();
+        return signalTracer.trace("movieinfos.stream", streamSubscriberPolicy.apply("movieinfos", moviesInfoService.getMovieInfoStream()));
+    }
+
+    @GetMapping(value = "/movieinfos/events", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<MovieInfoEvent> getMovieInfoEvents(@RequestParam(value = "after", required = false) String after,
+                                                   @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        Flux<MovieInfoEvent> events = moviesInfoService.getMovieInfoEvents(after != null ? after : lastEventId);
+        return signalTracer.trace("movieinfos.events", streamSubscriberPolicy.apply("movieinfo-events", events));
     }
 
     @PostMapping("/movieinfos")
     @ResponseStatus(HttpStatus.CREATED)
     public Mono<MovieInfo> addMovieInfo(@RequestBody @Valid MovieInfo movieInfo) {
-        return moviesInfoService.addMovieInfo(movieInfo)
-                .doOnNext(savedMovieInfo -> moviesInfoSink.tryEmitNext(savedMovieInfo))
-                .log();
+        return signalTracer.trace("movieinfos.add", moviesInfoService.addMovieInfo(movieInfo));
+    }
+
+    @PostMapping(value = "/movieinfos/bulk", consumes = MediaType.APPLICATION_NDJSON_VALUE, produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<BulkResult> addMovieInfos(@RequestBody Flux<String> lines) {
+        return signalTracer.trace("movieinfos.bulk", movieInfoBulkService.addMovieInfos(lines));
     }
 
     @PutMapping("/movieinfos/{id}")
     public Mono<ResponseEntity<MovieInfo>> updateMovieInfo(@RequestBody MovieInfo updatedMovieInfo, @PathVariable String id) {
-        return moviesInfoService.updateMovieInfo(updatedMovieInfo, id)
+        return signalTracer.trace("movieinfos.update", moviesInfoService.updateMovieInfo(updatedMovieInfo, id)
                 .map(ResponseEntity.status(HttpStatus.OK)::body)
-                .switchIfEmpty(Mono.just(ResponseEntity.status(HttpStatus.NOT_FOUND).build()))
-                .log();
+                .switchIfEmpty(Mono.just(ResponseEntity.status(HttpStatus.NOT_FOUND).build())));
     }
 
     @DeleteMapping("/movieinfos/{id}")
     @ResponseStatus(HttpStatus.NO_CONTENT)
     public Mono<Void> deleteMovieInfo(@PathVariable String id) {
-        return moviesInfoService.deleteMovieInfo(id).log();
+        return signalTracer.trace("movieinfos.delete", moviesInfoService.deleteMovieInfo(id));
+    }
+
+    private ResponseEntity.BodyBuilder tagged(Object body, MediaType contentType) {
+        return ResponseEntity.ok()
+                .contentType(contentType)
+                .varyBy(HttpHeaders.ACCEPT)
+                .eTag(entityTags.of(body, contentType));
     }
 }
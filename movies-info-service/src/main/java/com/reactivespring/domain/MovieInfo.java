@@ -1,9 +1,12 @@
 package com.reactivespring.domain;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import javax.validation.constraints.NotBlank;
@@ -16,18 +19,29 @@ import java.util.List;
 @NoArgsConstructor
 @AllArgsConstructor
 @Document
+@JsonInclude(JsonInclude.Include.NON_NULL)
 public class MovieInfo {
 
     @Id
     private String movieInfoId;
 
+    @Indexed
     @NotBlank(message = "movieInfo.name must be present")
     private String name;
 
+    @Indexed
     @NotNull
     @Positive(message = "movieInfo.year must be a positive value")
     private Integer year;
 
+    @Indexed
     private List<@NotBlank(message = "movieInfo.cast must be present") String> cast;
     private LocalDate releaseDate;
+
+    @Version
+    private Long version;
+
+    public MovieInfo(String movieInfoId, String name, Integer year, List<String> cast, LocalDate releaseDate) {
+        this(movieInfoId, name, year, cast, releaseDate, null);
+    }
 }
@@ -0,0 +1,28 @@
+package com.reactivespring.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Document
+public class MovieInfoEvent {
+
+    // ObjectId hex string, increasing in publish order; doubles as the resume cursor
+    @Id
+    private String eventId;
+
+    private MovieInfoEventType type;
+    private String movieInfoId;
+    private MovieInfo movieInfo;
+
+    @Indexed(expireAfter = "7d")
+    private Instant createdAt;
+}
@@ -0,0 +1,12 @@
+package com.reactivespring.repository;
+
+import com.reactivespring.domain.MovieInfoEvent;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+
+@Repository
+public interface MovieInfoEventRepository extends ReactiveMongoRepository<MovieInfoEvent, String> {
+
+    Flux<MovieInfoEvent> findByEventIdBetweenOrderByEventId(String afterEventId, String beforeEventId);
+}
@@ -1,6 +1,8 @@
 package com.reactivespring.repository;
 
 import com.reactivespring.domain.MovieInfo;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.repository.Query;
 import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
 import org.springframework.stereotype.Repository;
 import reactor.core.publisher.Flux;
@@ -11,4 +13,12 @@ public interface MovieInfoRepository extends ReactiveMongoRepository<MovieInfo,
 
     Mono<MovieInfo> findByName(String name);
     Flux<MovieInfo> findByYear(Integer year);
+
+    Flux<MovieInfo> findAllBy(Pageable pageable);
+
+    Flux<MovieInfo> findByMovieInfoIdGreaterThan(String after, Pageable pageable);
+
+    // string ids sort before ObjectIds and $gt never crosses BSON types, so a page after a string id also takes the ObjectIds
+    @Query("{ '$or': [ { '_id': { '$gt': ?0 } }, { '_id': { '$type': 'objectId' } } ] }")
+    Flux<MovieInfo> findAfterStringId(String after, Pageable pageable);
 }
@@ -0,0 +1,146 @@
+package com.reactivespring.service;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.model.InsertManyOptions;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.reactivespring.domain.BulkResult;
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieInfoEventType;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+@Service
+@Slf4j
+public class MovieInfoBulkService {
+
+    final private ReactiveMongoTemplate reactiveMongoTemplate;
+    final private MovieInfoEventService movieInfoEventService;
+    final private Validator validator;
+    final private ObjectMapper objectMapper;
+    final private String collectionName;
+
+    @Value("${movieinfos.bulk.batch-size:500}")
+    private int batchSize;
+
+    @Value("${movieinfos.bulk.concurrency:2}")
+    private int concurrency;
+
+    public MovieInfoBulkService(ReactiveMongoTemplate reactiveMongoTemplate, MovieInfoEventService movieInfoEventService,
+                                Validator validator, ObjectMapper objectMapper) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+        this.movieInfoEventService = movieInfoEventService;
+        this.validator = validator;
+        this.objectMapper = objectMapper;
+        this.collectionName = reactiveMongoTemplate.getCollectionName(MovieInfo.class);
+    }
+
+    // lines are parsed per batch, so a malformed one fails on its own instead of the whole request
+    public Flux<BulkResult> addMovieInfos(Flux<String> lines) {
+        return lines
+                .index()
+                .filter(indexed -> !indexed.getT2().trim().isEmpty())
+                .buffer(batchSize)
+                .flatMapSequential(this::insertBatch, concurrency);
+    }
+
+    private Flux<BulkResult> insertBatch(List<Tuple2<Long, String>> batch) {
+        BulkResult[] results = new BulkResult[batch.size()];
+        MovieInfo[] movieInfos = new MovieInfo[batch.size()];
+        List<Document> documents = new ArrayList<>();
+        List<Integer> positions = new ArrayList<>();
+
+        for (int position = 0; position < batch.size(); position++) {
+            long index = batch.get(position).getT1();
+            MovieInfo movieInfo;
+            try {
+                movieInfo = objectMapper.readValue(batch.get(position).getT2(), MovieInfo.class);
+            } catch (JsonProcessingException ex) {
+                results[position] = BulkResult.invalid(index, "movieInfo: malformed line, " + ex.getOriginalMessage());
+                continue;
+            }
+
+            String violations = violations(movieInfo);
+            if (violations != null) {
+                results[position] = BulkResult.invalid(index, violations);
+                continue;
+            }
+            movieInfo.setVersion(0L);
+            movieInfos[position] = movieInfo;
+            Document document = new Document();
+            reactiveMongoTemplate.getConverter().write(movieInfo, document);
+            documents.add(document);
+            positions.add(position);
+        }
+        if (documents.isEmpty()) {
+            return Flux.fromArray(results);
+        }
+
+        // unordered, so one duplicate id does not stop the rest of the batch from being written
+        return reactiveMongoTemplate.getCollection(collectionName)
+                .flatMap(collection -> Mono.from(collection.insertMany(documents, new InsertManyOptions().ordered(false))))
+                .map(insertManyResult -> Collections.<Integer, String>emptyMap())
+                .onErrorResume(MongoBulkWriteException.class, ex -> Mono.just(ex.getWriteErrors().stream()
+                        .collect(Collectors.toMap(BulkWriteError::getIndex, BulkWriteError::getMessage))))
+                .onErrorResume(ex -> unwritten(documents, ex))
+                .flatMapMany(writeErrors -> {
+                    List<MovieInfo> created = new ArrayList<>();
+                    for (int i = 0; i < documents.size(); i++) {
+                        int position = positions.get(i);
+                        long index = batch.get(position).getT1();
+                        if (writeErrors.containsKey(i)) {
+                            results[position] = BulkResult.failed(index, writeErrors.get(i));
+                            continue;
+                        }
+                        MovieInfo movieInfo = movieInfos[position];
+                        movieInfo.setMovieInfoId(documents.get(i).get("_id").toString());
+                        results[position] = BulkResult.created(index, movieInfo.getMovieInfoId());
+                        created.add(movieInfo);
+                    }
+                    return movieInfoEventService.publishAll(MovieInfoEventType.SAVED, created)
+                            .thenMany(Flux.fromArray(results));
+                });
+    }
+
+    // the batch may have been partly written before the error, so only what is missing from the collection is failed
+    private Mono<Map<Integer, String>> unwritten(List<Document> documents, Throwable error) {
+        log.error("Bulk insert of {} movie infos failed, checking which were written: {}", documents.size(), error.getMessage());
+        List<Object> ids = documents.stream()
+                .map(document -> document.get("_id"))
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+        return reactiveMongoTemplate.getCollection(collectionName)
+                .flatMapMany(collection -> collection.find(new Document("_id", new Document("$in", ids)))
+                        .projection(new Document("_id", 1)))
+                .map(document -> document.get("_id"))
+                .collect(Collectors.toSet())
+                .map(written -> IntStream.range(0, documents.size()).boxed()
+                        .filter(i -> !written.contains(documents.get(i).get("_id")))
+                        .collect(Collectors.toMap(Function.identity(), i -> String.valueOf(error.getMessage()))));
+    }
+
+    private String violations(MovieInfo movieInfo) {
+        Set<ConstraintViolation<MovieInfo>> constraintViolations = validator.validate(movieInfo);
+        if (constraintViolations.isEmpty()) {
+            return null;
+        }
+        return constraintViolations.stream()
+                .map(ConstraintViolation::getMessage)
+                .sorted()
+                .collect(Collectors.joining(","));
+    }
+}
@@ -0,0 +1,170 @@
+package com.reactivespring.service;
+
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieInfoEvent;
+import com.reactivespring.domain.MovieInfoEventType;
+import com.reactivespring.repository.MovieInfoEventRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.retry.Retry;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+@Service
+@Slf4j
+public class MovieInfoEventService {
+
+    final private MovieInfoEventRepository movieInfoEventRepository;
+    final private Sinks.Many<MovieInfoEvent> movieInfoEventsSink;
+    final private Sinks.Many<Mono<Void>> writes = Sinks.many().unicast().onBackpressureBuffer();
+    final private AtomicInteger pendingWrites = new AtomicInteger();
+    final private int maxPendingWrites;
+    final private Duration pollInterval;
+    final private Duration settleDelay;
+    private ObjectId lastEventId;
+    private volatile String tailedEventId;
+    private Disposable tail;
+
+    public MovieInfoEventService(MovieInfoEventRepository movieInfoEventRepository,
+                                 @Value("${movieinfos.events.replay-history:1000}") int replayHistory,
+                                 @Value("${movieinfos.events.replay-max-age:10m}") Duration replayMaxAge,
+                                 @Value("${movieinfos.events.max-pending-writes:1000}") int maxPendingWrites,
+                                 @Value("${movieinfos.events.poll-interval:500ms}") Duration pollInterval,
+                                 @Value("${movieinfos.events.settle-delay:2s}") Duration settleDelay) {
+        this.movieInfoEventRepository = movieInfoEventRepository;
+        this.maxPendingWrites = maxPendingWrites;
+        this.pollInterval = pollInterval;
+        this.settleDelay = settleDelay;
+        this.movieInfoEventsSink = Sinks.many().replay().limit(replayHistory, replayMaxAge);
+        this.writes.asFlux().concatMap(write -> write).subscribe();
+    }
+
+    // persisted in order; subscribers see it once the tail reads it back, whichever instance wrote it
+    public Mono<MovieInfoEvent> publish(MovieInfoEventType type, String movieInfoId, MovieInfo movieInfo) {
+        return serialized(() -> movieInfoEventRepository.save(newEvent(type, movieInfoId, movieInfo)));
+    }
+
+    public Mono<Void> publishAll(MovieInfoEventType type, List<MovieInfo> movieInfos) {
+        if (movieInfos.isEmpty()) {
+            return Mono.empty();
+        }
+        return serialized(() -> {
+            List<MovieInfoEvent> events = movieInfos.stream()
+                    .map(movieInfo -> newEvent(type, movieInfo.getMovieInfoId(), movieInfo))
+                    .collect(Collectors.toList());
+
+            return movieInfoEventRepository.insert(events).then();
+        });
+    }
+
+    public Flux<MovieInfoEvent> getEvents(String lastEventId) {
+        if (lastEventId == null || !ObjectId.isValid(lastEventId)) {
+            return movieInfoEventsSink.asFlux();
+        }
+
+        return Flux.defer(() -> {
+            AtomicReference<String> lastEmitted = new AtomicReference<>(lastEventId);
+
+            Flux<MovieInfoEvent> history = movieInfoEventRepository.findByEventIdBetweenOrderByEventId(lastEventId, settledEventId());
+            Flux<MovieInfoEvent> live = movieInfoEventsSink.asFlux()
+                    .filter(event -> event.getEventId().compareTo(lastEmitted.get()) > 0);
+
+            return Flux.concat(history, live)
+                    .doOnNext(event -> lastEmitted.set(event.getEventId()));
+        });
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void start() {
+        if (tail != null && !tail.isDisposed()) {
+            return;
+        }
+        if (tailedEventId == null) {
+            tailedEventId = settledEventId();
+        }
+
+        tail = Flux.defer(() -> movieInfoEventRepository.findByEventIdBetweenOrderByEventId(tailedEventId, settledEventId()))
+                .doOnNext(event -> {
+                    tailedEventId = event.getEventId();
+                    movieInfoEventsSink.tryEmitNext(event);
+                })
+                .doOnError(ex -> log.warn("Tailing MovieInfoEvents failed, resuming after event {}: {}", tailedEventId, ex.getMessage()))
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1)).maxBackoff(Duration.ofSeconds(30)))
+                .repeatWhen(completed -> completed.delayElements(pollInterval))
+                .subscribe();
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        if (tail != null) {
+            tail.dispose();
+        }
+    }
+
+    // ids from other instances interleave within a second and an insert can land late, so only ids older than settleDelay are read
+    private String settledEventId() {
+        return String.format("%08x%016x", Instant.now().minus(settleDelay).getEpochSecond(), 0L);
+    }
+
+    // a stalled Mongo fails new writes once maxPendingWrites are queued instead of piling them up on heap
+    private <T> Mono<T> serialized(Supplier<Mono<T>> write) {
+        return Mono.create(sink -> {
+            if (pendingWrites.incrementAndGet() > maxPendingWrites) {
+                pendingWrites.decrementAndGet();
+                sink.error(new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Too many pending movie info event writes"));
+                return;
+            }
+            Mono<Void> queued = Mono.defer(write)
+                    .doOnSuccess(sink::success)
+                    .doOnError(sink::error)
+                    .onErrorResume(ex -> Mono.empty())
+                    .doFinally(signalType -> pendingWrites.decrementAndGet())
+                    .then();
+            Sinks.EmitResult result;
+            synchronized (writes) {
+                result = writes.tryEmitNext(queued);
+            }
+            if (result.isFailure()) {
+                pendingWrites.decrementAndGet();
+                sink.error(new IllegalStateException("Unable to queue movie info event write: " + result));
+            }
+        });
+    }
+
+    private MovieInfoEvent newEvent(MovieInfoEventType type, String movieInfoId, MovieInfo movieInfo) {
+        ObjectId eventId = new ObjectId();
+        if (lastEventId != null && eventId.compareTo(lastEventId) <= 0) {
+            // the clock went back or the driver-wide counter wrapped within the second; go on from the last id
+            eventId = successor(lastEventId);
+        }
+        lastEventId = eventId;
+        return new MovieInfoEvent(eventId.toHexString(), type, movieInfoId, movieInfo, Instant.now());
+    }
+
+    private static ObjectId successor(ObjectId objectId) {
+        byte[] bytes = objectId.toByteArray();
+        for (int i = bytes.length - 1; i >= 0; i--) {
+            if (++bytes[i] != 0) {
+                break;
+            }
+        }
+        return new ObjectId(bytes);
+    }
+}
@@ -1,49 +1,152 @@
 package com.reactivespring.service;
 
 import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieInfoEvent;
+import com.reactivespring.domain.MovieInfoEventType;
 import com.reactivespring.repository.MovieInfoRepository;
+import org.bson.types.ObjectId;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
 @Service
 public class MoviesInfoService {
 
+    private static final Set<String> PROJECTABLE_FIELDS = new HashSet<>(Arrays.asList("name", "year", "cast", "releaseDate"));
+
     final private MovieInfoRepository movieInfoRepository;
+    final private MovieInfoEventService movieInfoEventService;
+    final private ReactiveMongoTemplate reactiveMongoTemplate;
 
-    public MoviesInfoService(MovieInfoRepository movieInfoRepository) {
+    public MoviesInfoService(MovieInfoRepository movieInfoRepository, MovieInfoEventService movieInfoEventService,
+                             ReactiveMongoTemplate reactiveMongoTemplate) {
         this.movieInfoRepository = movieInfoRepository;
+        this.movieInfoEventService = movieInfoEventService;
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
     }
 
     public Mono<MovieInfo> addMovieInfo(MovieInfo movieInfo) {
-        return movieInfoRepository.save(movieInfo);
+        movieInfo.setVersion(null);
+        return movieInfoRepository.insert(movieInfo)
+                .onErrorMap(DuplicateKeyException.class, ex -> new ResponseStatusException(HttpStatus.CONFLICT,
+                        "movieInfo.movieInfoId: " + movieInfo.getMovieInfoId() + " already exists"))
+                .flatMap(this::publishSaved);
     }
 
-    public Flux<MovieInfo> getAllMovieInfos() {
-        return movieInfoRepository.findAll();
+    public Flux<MovieInfo> getAllMovieInfos(String after, int limit, List<String> fields) {
+        if (fields != null) {
+            Query query = projected(fields);
+            if (after != null) {
+                query.addCriteria(ObjectId.isValid(after)
+                        ? Criteria.where("movieInfoId").gt(after)
+                        : new Criteria().orOperator(Criteria.where("movieInfoId").gt(after), Criteria.where("movieInfoId").type(7)));
+            }
+            return reactiveMongoTemplate.find(query.with(Sort.by("movieInfoId")).limit(limit), MovieInfo.class);
+        }
+
+        Pageable pageable = PageRequest.of(0, limit, Sort.by("movieInfoId"));
+        if (after == null) {
+            return movieInfoRepository.findAllBy(pageable);
+        }
+        return ObjectId.isValid(after)
+                ? movieInfoRepository.findByMovieInfoIdGreaterThan(after, pageable)
+                : movieInfoRepository.findAfterStringId(after, pageable);
     }
 
-    public Mono<MovieInfo> getAllMovieInfosById(String id) {
+    public Mono<MovieInfo> getAllMovieInfosById(String id, List<String> fields) {
+        if (fields != null) {
+            return reactiveMongoTemplate.findOne(projected(fields).addCriteria(Criteria.where("movieInfoId").is(id)), MovieInfo.class);
+        }
         return movieInfoRepository.findById(id);
     }
 
+    public Flux<MovieInfo> getMovieInfosByIds(List<String> ids, List<String> fields) {
+        if (fields != null) {
+            return reactiveMongoTemplate.find(projected(fields).addCriteria(Criteria.where("movieInfoId").in(ids)), MovieInfo.class);
+        }
+        return movieInfoRepository.findAllById(ids);
+    }
+
+    // one findAndModify, so concurrent updates can't overwrite each other with stale reads
     public Mono<MovieInfo> updateMovieInfo(MovieInfo updatedMovieInfo, String id) {
-        return movieInfoRepository.findById(id)
-                .flatMap(movieInfo -> {
-                    movieInfo.setCast(updatedMovieInfo.getCast());
-                    movieInfo.setName(updatedMovieInfo.getName());
-                    movieInfo.setYear(updatedMovieInfo.getYear());
-                    movieInfo.setReleaseDate(updatedMovieInfo.getReleaseDate());
+        Query query = Query.query(Criteria.where("movieInfoId").is(id));
+        if (updatedMovieInfo.getVersion() != null) {
+            query.addCriteria(Criteria.where("version").is(updatedMovieInfo.getVersion()));
+        }
+        Update update = new Update()
+                .set("name", updatedMovieInfo.getName())
+                .set("year", updatedMovieInfo.getYear())
+                .set("cast", updatedMovieInfo.getCast())
+                .set("releaseDate", updatedMovieInfo.getReleaseDate())
+                .inc("version", 1);
 
-                    return movieInfoRepository.save(movieInfo);
-                });
+        return reactiveMongoTemplate.findAndModify(query, update, FindAndModifyOptions.options().returnNew(true), MovieInfo.class)
+                .switchIfEmpty(versionConflict(id, updatedMovieInfo.getVersion()))
+                .flatMap(this::publishSaved);
     }
 
     public Mono<Void> deleteMovieInfo(String id) {
-        return movieInfoRepository.deleteById(id);
+        return reactiveMongoTemplate.findAndRemove(Query.query(Criteria.where("movieInfoId").is(id)), MovieInfo.class)
+                .flatMap(removed -> movieInfoEventService.publish(MovieInfoEventType.DELETED, id, null))
+                .then();
     }
 
-    public Flux<MovieInfo> getMovieInfoByYear(Integer year) {
+    public Flux<MovieInfo> getMovieInfoByYear(Integer year, List<String> fields) {
+        if (fields != null) {
+            return reactiveMongoTemplate.find(projected(fields).addCriteria(Criteria.where("year").is(year)), MovieInfo.class);
+        }
         return movieInfoRepository.findByYear(year);
     }
+
+    public Flux<MovieInfo> getMovieInfoStream() {
+        return movieInfoEventService.getEvents(null)
+                .filter(event -> event.getType() == MovieInfoEventType.SAVED)
+                .map(MovieInfoEvent::getMovieInfo);
+    }
+
+    public Flux<MovieInfoEvent> getMovieInfoEvents(String lastEventId) {
+        return movieInfoEventService.getEvents(lastEventId);
+    }
+
+    private Query projected(List<String> fields) {
+        Query query = new Query();
+        fields.forEach(field -> {
+            if (!PROJECTABLE_FIELDS.contains(field)) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "movieInfo.fields: unknown field " + field);
+            }
+            query.fields().include(field);
+        });
+        return query;
+    }
+
+    private Mono<MovieInfo> versionConflict(String id, Long version) {
+        if (version == null) {
+            return Mono.empty();
+        }
+        return Mono.defer(() -> movieInfoRepository.existsById(id))
+                .flatMap(exists -> exists
+                        ? Mono.error(new ResponseStatusException(HttpStatus.CONFLICT, "movieInfo.version: " + version + " is no longer current"))
+                        : Mono.empty());
+    }
+
+    private Mono<MovieInfo> publishSaved(MovieInfo savedMovieInfo) {
+        return movieInfoEventService.publish(MovieInfoEventType.SAVED, savedMovieInfo.getMovieInfoId(), savedMovieInfo)
+                .thenReturn(savedMovieInfo);
+    }
 }
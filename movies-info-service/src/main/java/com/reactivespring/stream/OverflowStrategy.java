@@ -0,0 +1,8 @@
+package com.reactivespring.stream;
+
+public enum OverflowStrategy {
+    DROP_OLDEST,
+    DROP_LATEST,
+    BUFFER,
+    DISCONNECT
+}
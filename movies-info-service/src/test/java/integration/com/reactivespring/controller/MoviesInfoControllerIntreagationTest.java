@@ -1,6 +1,9 @@
 package com.reactivespring.controller;
 
+import com.reactivespring.domain.BulkResult;
 import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieInfoEvent;
+import com.reactivespring.domain.MovieInfoEventType;
 import com.reactivespring.repository.MovieInfoRepository;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Assertions;
@@ -9,15 +12,24 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.EntityExchangeResult;
 import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.util.UriComponentsBuilder;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 import reactor.test.StepVerifier;
 
 import java.net.URI;
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -34,6 +46,9 @@ class MoviesInfoControllerIntreagationTest {
     @Autowired
     private WebTestClient webTestClient;
 
+    @LocalServerPort
+    private int port;
+
     @BeforeEach
     void setUp() {
         List<MovieInfo> movieInfos = Arrays.asList(
@@ -62,6 +77,79 @@ class MoviesInfoControllerIntreagationTest {
                 .hasSize(3);
     }
 
+    @Test
+    void getAllMovieInfos_paginated() {
+        // "abc" sorts before the generated ObjectIds, so the walk crosses from string to ObjectId ids
+        List<String> movieInfoIds = new ArrayList<>();
+        String uri = MOVIES_INFO_URL + "?limit=1";
+        while (uri != null) {
+            EntityExchangeResult<List<MovieInfo>> result = webTestClient
+                    .get()
+                    .uri(uri)
+                    .exchange()
+                    .expectStatus()
+                    .is2xxSuccessful()
+                    .expectBodyList(MovieInfo.class)
+                    .hasSize(1)
+                    .returnResult();
+            movieInfoIds.add(result.getResponseBody().get(0).getMovieInfoId());
+
+            String link = result.getResponseHeaders().getFirst(HttpHeaders.LINK);
+            URI next = link == null ? null : URI.create(link.substring(1, link.indexOf('>')));
+            uri = next == null ? null : next.getRawPath() + "?" + next.getRawQuery();
+        }
+
+        assertEquals(3, movieInfoIds.size());
+        assertEquals("abc", movieInfoIds.get(0));
+        assertEquals(3, new HashSet<>(movieInfoIds).size());
+    }
+
+    @Test
+    void getAllMovieInfos_fields() {
+        webTestClient
+                .get()
+                .uri(MOVIES_INFO_URL + "?fields=name,year")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBodyList(MovieInfo.class)
+                .value(movieInfos -> {
+                    assertEquals(3, movieInfos.size());
+                    movieInfos.forEach(movieInfo -> {
+                        assertNotNull(movieInfo.getMovieInfoId());
+                        assertNotNull(movieInfo.getName());
+                        assertNotNull(movieInfo.getYear());
+                        assertNull(movieInfo.getCast());
+                        assertNull(movieInfo.getReleaseDate());
+                    });
+                });
+    }
+
+    @Test
+    void getMovieInfoById_fields() {
+        webTestClient
+                .get()
+                .uri(MOVIES_INFO_URL + "/{id}?fields=name,cast", "abc")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBody()
+                .jsonPath("$.movieInfoId").isEqualTo("abc")
+                .jsonPath("$.name").isEqualTo("Dark Knight Rises")
+                .jsonPath("$.cast.length()").isEqualTo(2)
+                .jsonPath("$.year").doesNotExist();
+    }
+
+    @Test
+    void getMovieInfoById_unknownField() {
+        webTestClient
+                .get()
+                .uri(MOVIES_INFO_URL + "/{id}?fields=budget", "abc")
+                .exchange()
+                .expectStatus()
+                .isBadRequest();
+    }
+
     @Test
     void getAllMovieInfos_stream() {
         MovieInfo movieInfo = new MovieInfo(null, "Batman Begins Mock", 2005, Arrays.asList("Christian Bale", "Michael Cane"), LocalDate.parse("2005-06-15"));
@@ -95,6 +183,49 @@ class MoviesInfoControllerIntreagationTest {
                 .verify();
     }
 
+    @Test
+    void getMovieInfoEvents_updateAndDelete() {
+        MovieInfo movieInfo = new MovieInfo(null, "Dark Knight Rises Updated", 2012, Arrays.asList("Christian Bale", "Tom Hardy"), LocalDate.parse("2012-07-20"));
+
+        webTestClient
+                .put()
+                .uri(MOVIES_INFO_URL+"/{id}", "abc")
+                .bodyValue(movieInfo)
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful();
+
+        webTestClient
+                .delete()
+                .uri(MOVIES_INFO_URL+"/{id}", "abc")
+                .exchange()
+                .expectStatus()
+                .isNoContent();
+
+        Flux<MovieInfoEvent> movieInfoEventFlux = webTestClient
+                .get()
+                .uri(MOVIES_INFO_URL+"/events")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .returnResult(MovieInfoEvent.class)
+                .getResponseBody()
+                .filter(event -> "abc".equals(event.getMovieInfoId()))
+                .skipUntil(event -> event.getMovieInfo() != null && "Dark Knight Rises Updated".equals(event.getMovieInfo().getName()));
+
+        StepVerifier.create(movieInfoEventFlux)
+                .assertNext(event -> {
+                    assertEquals(MovieInfoEventType.SAVED, event.getType());
+                    assertEquals("Dark Knight Rises Updated", event.getMovieInfo().getName());
+                })
+                .assertNext(event -> {
+                    assertEquals(MovieInfoEventType.DELETED, event.getType());
+                    assertNull(event.getMovieInfo());
+                })
+                .thenCancel()
+                .verify();
+    }
+
     @Test
     void getMovieInfosByYear() {
         URI uri = UriComponentsBuilder
@@ -132,6 +263,28 @@ class MoviesInfoControllerIntreagationTest {
                 });
     }
 
+    @Test
+    void getMovieInfosByIds() {
+        URI uri = UriComponentsBuilder
+                .fromUriString(MOVIES_INFO_URL)
+                .queryParam("ids", "abc,def")
+                .buildAndExpand()
+                .toUri();
+
+        webTestClient
+                .get()
+                .uri(uri)
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBodyList(MovieInfo.class)
+                .value(movieInfos -> {
+                    assertEquals(1, movieInfos.size());
+                    assertEquals("abc", movieInfos.get(0).getMovieInfoId());
+                });
+    }
+
     @Test
     void getMovieInfosByIdNotFound() {
         String movieInfoId = "def";
@@ -177,6 +330,76 @@ class MoviesInfoControllerIntreagationTest {
                 });
     }
 
+    @Test
+    void addMovieInfos_bulk() {
+        // "abc" already exists and one line is cut short; neither stops the lines after it
+        String body = "{\"name\": \"Inception\", \"year\": 2010, \"cast\": [\"Leonardo DiCaprio\"], \"releaseDate\": \"2010-07-16\"}\n"
+                + "{\"name\": \"\", \"year\": -2010, \"cast\": [\"Leonardo DiCaprio\"], \"releaseDate\": \"2010-07-16\"}\n"
+                + "{\"movieInfoId\": \"abc\", \"name\": \"Dark Knight Rises\", \"year\": 2012, \"cast\": [\"Tom Hardy\"], \"releaseDate\": \"2012-07-20\"}\n"
+                + "{\"name\": \"Tenet\", \"year\": 2020,\n"
+                + "{\"name\": \"Interstellar\", \"year\": 2014, \"cast\": [\"Matthew McConaughey\"], \"releaseDate\": \"2014-11-07\"}\n";
+
+        webTestClient
+                .post()
+                .uri(MOVIES_INFO_URL + "/bulk")
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .bodyValue(body)
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBodyList(BulkResult.class)
+                .value(results -> {
+                    assertEquals(5, results.size());
+                    assertEquals(BulkResult.Status.CREATED, results.get(0).getStatus());
+                    assertEquals(BulkResult.Status.INVALID, results.get(1).getStatus());
+                    assertEquals("movieInfo.name must be present,movieInfo.year must be a positive value", results.get(1).getError());
+                    assertEquals(BulkResult.Status.FAILED, results.get(2).getStatus());
+                    assertEquals(BulkResult.Status.INVALID, results.get(3).getStatus());
+                    assertEquals(BulkResult.Status.CREATED, results.get(4).getStatus());
+                    assertNotNull(results.get(4).getId());
+                });
+
+        StepVerifier.create(movieInfoRepository.findAll())
+                .expectNextCount(5)
+                .verifyComplete();
+        // bulk lines start at the same version as a single POST
+        assertEquals(0L, movieInfoRepository.findByYear(2014).blockFirst().getVersion());
+    }
+
+    @Test
+    void addMovieInfo_existingId() {
+        MovieInfo movieInfo = new MovieInfo("abc", "Dark Knight Rises Mock", 2012, Arrays.asList("Christian Bale", "Tom Hardy"), LocalDate.parse("2012-07-20"));
+
+        webTestClient
+                .post()
+                .uri(MOVIES_INFO_URL)
+                .bodyValue(movieInfo)
+                .exchange()
+                .expectStatus()
+                .isEqualTo(HttpStatus.CONFLICT);
+
+        assertEquals("Dark Knight Rises", movieInfoRepository.findById("abc").block().getName());
+    }
+
+    @Test
+    void addMovieInfo_echoedVersionIsDropped() {
+        MovieInfo movieInfo = new MovieInfo(null, "Batman Begins Mock", 2005, Arrays.asList("Christian Bale", "Michael Cane"), LocalDate.parse("2005-06-15"), 7L);
+
+        webTestClient
+                .post()
+                .uri(MOVIES_INFO_URL)
+                .bodyValue(movieInfo)
+                .exchange()
+                .expectStatus()
+                .isCreated()
+                .expectBody(MovieInfo.class)
+                .consumeWith(movieInfoEntityExchangeResult -> {
+                    MovieInfo savedMovieInfo = movieInfoEntityExchangeResult.getResponseBody();
+                    assertNotNull(savedMovieInfo);
+                    assertEquals(0L, savedMovieInfo.getVersion());
+                });
+    }
+
     @Test
     void updateMovieInfo() {
         String movieInfoId = "abc";
@@ -211,6 +434,61 @@ class MoviesInfoControllerIntreagationTest {
                 .isNotFound();
     }
 
+    @Test
+    void updateMovieInfo_concurrentWritersAreNotLost() {
+        String movieInfoId = "abc";
+        int writers = 20;
+
+        List<HttpStatus> statuses = Flux.range(0, writers)
+                .flatMap(i -> put(movieInfoId, new MovieInfo(null, "Dark Knight Rises " + i, 2012, Arrays.asList("Christian Bale", "Tom Hardy"), LocalDate.parse("2012-07-20"))), writers)
+                .collectList()
+                .block();
+
+        assertEquals(writers, statuses.stream().filter(HttpStatus.OK::equals).count());
+        // every write was applied to the current document exactly once
+        MovieInfo movieInfo = movieInfoRepository.findById(movieInfoId).block();
+        assertNotNull(movieInfo);
+        assertEquals((long) writers, movieInfo.getVersion());
+    }
+
+    @Test
+    void updateMovieInfo_staleVersionIsRejected() {
+        String movieInfoId = "abc";
+        int writers = 20;
+        Long version = movieInfoRepository.findById(movieInfoId).block().getVersion();
+
+        List<HttpStatus> statuses = Flux.range(0, writers)
+                .flatMap(i -> put(movieInfoId, new MovieInfo(null, "Dark Knight Rises " + i, 2012, Arrays.asList("Christian Bale", "Tom Hardy"), LocalDate.parse("2012-07-20"), version)), writers)
+                .collectList()
+                .block();
+
+        // all writers read the same revision, so only the first to reach Mongo wins
+        assertEquals(1, statuses.stream().filter(HttpStatus.OK::equals).count());
+        assertEquals(writers - 1, statuses.stream().filter(HttpStatus.CONFLICT::equals).count());
+        assertEquals(version + 1, movieInfoRepository.findById(movieInfoId).block().getVersion());
+    }
+
+    @Test
+    void updateMovieInfo_versionNotFound() {
+        MovieInfo movieInfo = new MovieInfo(null, "Batman Begins Mock", 2005, Arrays.asList("Christian Bale", "Michael Cane"), LocalDate.parse("2005-06-15"), 0L);
+
+        webTestClient
+                .put()
+                .uri(MOVIES_INFO_URL+"/{id}", "def")
+                .bodyValue(movieInfo)
+                .exchange()
+                .expectStatus()
+                .isNotFound();
+    }
+
+    private Mono<HttpStatus> put(String movieInfoId, MovieInfo movieInfo) {
+        return WebClient.create("http://localhost:" + port)
+                .put()
+                .uri(MOVIES_INFO_URL+"/{id}", movieInfoId)
+                .bodyValue(movieInfo)
+                .exchangeToMono(response -> response.releaseBody().thenReturn(response.statusCode()));
+    }
+
     @Test
     void deleteMovieInfo() {
         String movieInfoId = "abc";
@@ -1,29 +1,47 @@
 package com.reactivespring.controller;
 
+import com.reactivespring.domain.BulkResult;
 import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieInfoEvent;
+import com.reactivespring.domain.MovieInfoEventType;
+import com.reactivespring.service.MovieInfoBulkService;
 import com.reactivespring.service.MoviesInfoService;
+import com.reactivespring.stream.StreamSubscriberPolicy;
+import com.reactivespring.tracing.SignalTracer;
+import com.reactivespring.util.EntityTags;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
 import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.test.web.reactive.server.WebTestClient;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.time.Instant;
 import java.time.LocalDate;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.isA;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @WebFluxTest(controllers = MoviesInfoController.class)
 @AutoConfigureWebTestClient
+@Import({StreamSubscriberPolicy.class, SignalTracer.class, SimpleMeterRegistry.class, EntityTags.class})
 class MoviesInfoControllerTest {
     private static final String MOVIES_INFO_URL = "/v1/movieinfos";
+    private static final MediaType SMILE = MediaType.parseMediaType("application/x-jackson-smile");
 
     @Autowired
     private WebTestClient webTestClient;
@@ -31,6 +49,9 @@ class MoviesInfoControllerTest {
     @MockBean
     private MoviesInfoService moviesInfoServiceMock;
 
+    @MockBean
+    private MovieInfoBulkService movieInfoBulkServiceMock;
+
     @Test
     void getAllMovieInfos() {
         List<MovieInfo> movieInfos = Arrays.asList(
@@ -38,7 +59,7 @@ class MoviesInfoControllerTest {
                 new MovieInfo(null, "The Dark Knight", 2008, Arrays.asList("Christian Bale", "HeathLedger"), LocalDate.parse("2008-07-18")),
                 new MovieInfo("abc", "Dark Knight Rises", 2012, Arrays.asList("Christian Bale", "Tom Hardy"), LocalDate.parse("2012-07-20"))
         );
-        when(moviesInfoServiceMock.getAllMovieInfos()).thenReturn(Flux.fromIterable(movieInfos));
+        when(moviesInfoServiceMock.getAllMovieInfos(isNull(), anyInt(), isNull())).thenReturn(Flux.fromIterable(movieInfos));
 
         webTestClient
                 .get()
@@ -46,16 +67,57 @@ class MoviesInfoControllerTest {
                 .exchange()
                 .expectStatus()
                 .is2xxSuccessful()
+                .expectHeader()
+                .doesNotExist(HttpHeaders.LINK)
                 .expectBodyList(MovieInfo.class)
                 .hasSize(3);
     }
 
+    @Test
+    void getAllMovieInfos_paginated() {
+        List<MovieInfo> movieInfos = Arrays.asList(
+                new MovieInfo("a", "Batman Begins", 2005, Arrays.asList("Christian Bale", "Michael Cane"), LocalDate.parse("2005-06-15")),
+                new MovieInfo("b", "The Dark Knight", 2008, Arrays.asList("Christian Bale", "HeathLedger"), LocalDate.parse("2008-07-18")),
+                new MovieInfo("c", "Dark Knight Rises", 2012, Arrays.asList("Christian Bale", "Tom Hardy"), LocalDate.parse("2012-07-20"))
+        );
+        // the controller asks for one more than the page size to detect a next page
+        when(moviesInfoServiceMock.getAllMovieInfos("0", 3, null)).thenReturn(Flux.fromIterable(movieInfos));
+
+        webTestClient
+                .get()
+                .uri(MOVIES_INFO_URL + "?limit=2&after=0")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectHeader()
+                .value(HttpHeaders.LINK, link -> assertTrue(link.endsWith(MOVIES_INFO_URL + "?limit=2&after=b>; rel=\"next\""), link))
+                .expectBodyList(MovieInfo.class)
+                .value(page -> {
+                    assertEquals(2, page.size());
+                    assertEquals("b", page.get(1).getMovieInfoId());
+                });
+    }
+
+    @Test
+    void getAllMovieInfos_limitCappedAtMax() {
+        when(moviesInfoServiceMock.getAllMovieInfos(isNull(), anyInt(), isNull())).thenReturn(Flux.empty());
+
+        webTestClient
+                .get()
+                .uri(MOVIES_INFO_URL + "?limit=1000000")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful();
+
+        verify(moviesInfoServiceMock).getAllMovieInfos(null, 1001, null);
+    }
+
     @Test
     void getMovieInfosById() {
         String movieInfoId = "abc";
         MovieInfo movieInfo = new MovieInfo("abc", "Dark Knight Rises", 2012, Arrays.asList("Christian Bale", "Tom Hardy"), LocalDate.parse("2012-07-20"));
 
-        when(moviesInfoServiceMock.getAllMovieInfosById(movieInfoId)).thenReturn(Mono.just(movieInfo));
+        when(moviesInfoServiceMock.getAllMovieInfosById(movieInfoId, null)).thenReturn(Mono.just(movieInfo));
 
         webTestClient
                 .get()
@@ -67,6 +129,235 @@ class MoviesInfoControllerTest {
                 .jsonPath("$.name").isEqualTo("Dark Knight Rises");
     }
 
+    @Test
+    void getMovieInfosById_smile() {
+        String movieInfoId = "abc";
+        MovieInfo movieInfo = new MovieInfo("abc", "Dark Knight Rises", 2012, Arrays.asList("Christian Bale", "Tom Hardy"), LocalDate.parse("2012-07-20"));
+
+        when(moviesInfoServiceMock.getAllMovieInfosById(movieInfoId, null)).thenReturn(Mono.just(movieInfo));
+
+        webTestClient
+                .get()
+                .uri(MOVIES_INFO_URL+"/{id}", movieInfoId)
+                .accept(SMILE)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectHeader()
+                .contentType(SMILE)
+                .expectBody(MovieInfo.class)
+                .isEqualTo(movieInfo);
+
+        // callers that do not ask for Smile keep getting JSON
+        webTestClient
+                .get()
+                .uri(MOVIES_INFO_URL+"/{id}", movieInfoId)
+                .exchange()
+                .expectHeader()
+                .contentType(MediaType.APPLICATION_JSON);
+    }
+
+    @Test
+    void getMovieInfosById_notModified() {
+        String movieInfoId = "abc";
+        when(moviesInfoServiceMock.getAllMovieInfosById(movieInfoId, null))
+                .thenAnswer(invocation -> Mono.just(new MovieInfo("abc", "Dark Knight Rises", 2012, Arrays.asList("Christian Bale", "Tom Hardy"), LocalDate.parse("2012-07-20"))));
+
+        String etag = webTestClient
+                .get()
+                .uri(MOVIES_INFO_URL+"/{id}", movieInfoId)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .returnResult(MovieInfo.class)
+                .getResponseHeaders()
+                .getETag();
+        assertNotNull(etag);
+
+        webTestClient
+                .get()
+                .uri(MOVIES_INFO_URL+"/{id}", movieInfoId)
+                .header(HttpHeaders.IF_NONE_MATCH, etag)
+                .exchange()
+                .expectStatus()
+                .isNotModified()
+                .expectHeader()
+                .valueEquals(HttpHeaders.ETAG, etag)
+                .expectBody()
+                .isEmpty();
+
+        // a different representation of the same movie info must not match
+        when(moviesInfoServiceMock.getAllMovieInfosById(movieInfoId, Arrays.asList("name")))
+                .thenReturn(Mono.just(new MovieInfo("abc", "Dark Knight Rises", null, null, null)));
+
+        webTestClient
+                .get()
+                .uri(MOVIES_INFO_URL+"/{id}?fields=name", movieInfoId)
+                .header(HttpHeaders.IF_NONE_MATCH, etag)
+                .exchange()
+                .expectStatus()
+                .isOk();
+    }
+
+    @Test
+    void getMovieInfosById_etagPerRepresentation() {
+        String movieInfoId = "abc";
+        when(moviesInfoServiceMock.getAllMovieInfosById(movieInfoId, null))
+                .thenReturn(Mono.just(new MovieInfo("abc", "Dark Knight Rises", 2012, Arrays.asList("Christian Bale", "Tom Hardy"), LocalDate.parse("2012-07-20"))));
+
+        String jsonTag = webTestClient
+                .get()
+                .uri(MOVIES_INFO_URL+"/{id}", movieInfoId)
+                .accept(MediaType.APPLICATION_JSON)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectHeader()
+                .valueEquals(HttpHeaders.VARY, HttpHeaders.ACCEPT)
+                .returnResult(MovieInfo.class)
+                .getResponseHeaders()
+                .getETag();
+        String smileTag = webTestClient
+                .get()
+                .uri(MOVIES_INFO_URL+"/{id}", movieInfoId)
+                .accept(SMILE)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectHeader()
+                .contentType(SMILE)
+                .returnResult(MovieInfo.class)
+                .getResponseHeaders()
+                .getETag();
+        assertNotNull(jsonTag);
+        assertNotEquals(jsonTag, smileTag);
+
+        // the JSON tag must not validate a cached Smile copy
+        webTestClient
+                .get()
+                .uri(MOVIES_INFO_URL+"/{id}", movieInfoId)
+                .accept(SMILE)
+                .header(HttpHeaders.IF_NONE_MATCH, jsonTag)
+                .exchange()
+                .expectStatus()
+                .isOk();
+        webTestClient
+                .get()
+                .uri(MOVIES_INFO_URL+"/{id}", movieInfoId)
+                .accept(SMILE)
+                .header(HttpHeaders.IF_NONE_MATCH, smileTag)
+                .exchange()
+                .expectStatus()
+                .isNotModified();
+    }
+
+    @Test
+    void getMovieInfosById_fields() {
+        String movieInfoId = "abc";
+        MovieInfo movieInfo = new MovieInfo("abc", "Dark Knight Rises", 2012, null, null);
+
+        when(moviesInfoServiceMock.getAllMovieInfosById(movieInfoId, Arrays.asList("name", "year"))).thenReturn(Mono.just(movieInfo));
+
+        webTestClient
+                .get()
+                .uri(MOVIES_INFO_URL+"/{id}?fields=name,year", movieInfoId)
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBody()
+                .jsonPath("$.name").isEqualTo("Dark Knight Rises")
+                .jsonPath("$.year").isEqualTo(2012)
+                .jsonPath("$.cast").doesNotExist()
+                .jsonPath("$.releaseDate").doesNotExist();
+    }
+
+    @Test
+    void getMovieInfosByIds() {
+        List<MovieInfo> movieInfos = Arrays.asList(
+                new MovieInfo("abc", "Dark Knight Rises", 2012, Arrays.asList("Christian Bale", "Tom Hardy"), LocalDate.parse("2012-07-20")),
+                new MovieInfo("def", "The Dark Knight", 2008, Arrays.asList("Christian Bale", "HeathLedger"), LocalDate.parse("2008-07-18"))
+        );
+        when(moviesInfoServiceMock.getMovieInfosByIds(Arrays.asList("abc", "def"), null)).thenReturn(Flux.fromIterable(movieInfos));
+
+        webTestClient
+                .get()
+                .uri(MOVIES_INFO_URL+"?ids={ids}", "abc,def")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBodyList(MovieInfo.class)
+                .hasSize(2);
+    }
+
+    @Test
+    void getMovieInfosByIdsBatch() {
+        MovieInfo movieInfo = new MovieInfo("abc", "Dark Knight Rises", 2012, Arrays.asList("Christian Bale", "Tom Hardy"), LocalDate.parse("2012-07-20"));
+        when(moviesInfoServiceMock.getMovieInfosByIds(Arrays.asList("abc", "def"), null)).thenReturn(Flux.just(movieInfo));
+
+        webTestClient
+                .post()
+                .uri(MOVIES_INFO_URL+"/batch")
+                .bodyValue(Arrays.asList("abc", "def"))
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBodyList(MovieInfo.class)
+                .hasSize(1);
+    }
+
+    @Test
+    void addMovieInfos_bulk() {
+        when(movieInfoBulkServiceMock.addMovieInfos(any())).thenAnswer(invocation -> {
+            Flux<String> lines = invocation.getArgument(0);
+            return lines.index().map(indexed -> BulkResult.created(indexed.getT1(), indexed.getT2().contains("Dark Knight") ? "dk" : "bb"));
+        });
+        String body = "{\"name\": \"Batman Begins\", \"year\": 2005}\n"
+                + "{\"name\": \"The Dark Knight\", \"year\": 2008}\n";
+
+        webTestClient
+                .post()
+                .uri(MOVIES_INFO_URL + "/bulk")
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .bodyValue(body)
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectHeader()
+                .contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+                .expectBodyList(BulkResult.class)
+                .value(results -> {
+                    assertEquals(2, results.size());
+                    assertEquals(1L, results.get(1).getIndex());
+                    assertEquals("dk", results.get(1).getId());
+                });
+    }
+
+    @Test
+    void getMovieInfoEvents() {
+        MovieInfo movieInfo = new MovieInfo("abc", "Dark Knight Rises", 2012, Arrays.asList("Christian Bale", "Tom Hardy"), LocalDate.parse("2012-07-20"));
+        List<MovieInfoEvent> events = Arrays.asList(
+                new MovieInfoEvent("62a0c0f1e4b0a1a2b3c4d5e7", MovieInfoEventType.SAVED, "abc", movieInfo, Instant.now()),
+                new MovieInfoEvent("62a0c0f1e4b0a1a2b3c4d5e8", MovieInfoEventType.DELETED, "abc", null, Instant.now())
+        );
+        when(moviesInfoServiceMock.getMovieInfoEvents("62a0c0f1e4b0a1a2b3c4d5e6")).thenReturn(Flux.fromIterable(events));
+
+        webTestClient
+                .get()
+                .uri(MOVIES_INFO_URL+"/events")
+                .header("Last-Event-ID", "62a0c0f1e4b0a1a2b3c4d5e6")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBodyList(MovieInfoEvent.class)
+                .value(movieInfoEvents -> {
+                    assertEquals(2, movieInfoEvents.size());
+                    assertEquals(MovieInfoEventType.DELETED, movieInfoEvents.get(1).getType());
+                    assertEquals("62a0c0f1e4b0a1a2b3c4d5e8", movieInfoEvents.get(1).getEventId());
+                });
+    }
+
     @Test
     void addMovieInfo() {
         MovieInfo movieInfo = new MovieInfo("mockId", "Batman Begins Mock", 2005, Arrays.asList("Christian Bale", "Michael Cane"), LocalDate.parse("2005-06-15"));
@@ -0,0 +1,238 @@
+package com.reactivespring.service;
+
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieInfoEvent;
+import com.reactivespring.domain.MovieInfoEventType;
+import com.reactivespring.repository.MovieInfoEventRepository;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class MovieInfoEventServiceTest {
+    private static final int REPLAY_HISTORY = 1000;
+    private static final int MAX_PENDING_WRITES = 10;
+    private static final Duration SETTLE_DELAY = Duration.ofSeconds(2);
+
+    private MovieInfoEventRepository movieInfoEventRepositoryMock;
+    private MovieInfoEventService movieInfoEventService;
+
+    @BeforeEach
+    void setUp() {
+        // stubOnly so the mock does not record a million invocations itself
+        movieInfoEventRepositoryMock = mock(MovieInfoEventRepository.class, withSettings().stubOnly());
+        when(movieInfoEventRepositoryMock.save(any(MovieInfoEvent.class)))
+                .thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+
+        movieInfoEventService = new MovieInfoEventService(movieInfoEventRepositoryMock, REPLAY_HISTORY, Duration.ofMinutes(10), MAX_PENDING_WRITES,
+                Duration.ofMillis(10), SETTLE_DELAY);
+    }
+
+    @AfterEach
+    void tearDown() {
+        movieInfoEventService.stop();
+    }
+
+    @Test
+    void publish_heapStaysFlat() {
+        MovieInfo movieInfo = new MovieInfo("abc", "Dark Knight Rises", 2012, Arrays.asList("Christian Bale", "Tom Hardy"), LocalDate.parse("2012-07-20"));
+
+        publish(movieInfo, 100_000);
+        long usedAfterWarmup = usedHeap();
+
+        publish(movieInfo, 1_000_000);
+        long usedAfterMillion = usedHeap();
+
+        long growth = usedAfterMillion - usedAfterWarmup;
+        assertTrue(growth < 16 * 1024 * 1024, "Heap grew by " + growth + " bytes after 1M events");
+    }
+
+    @Test
+    void getEvents_replaysOnlyTheRecentHistory() {
+        List<MovieInfoEvent> events = new ArrayList<>();
+        for (int i = 0; i < REPLAY_HISTORY + 5; i++) {
+            events.add(event(MovieInfoEventType.DELETED));
+        }
+        when(movieInfoEventRepositoryMock.findByEventIdBetweenOrderByEventId(anyString(), anyString()))
+                .thenReturn(Flux.fromIterable(events))
+                .thenReturn(Flux.empty());
+        movieInfoEventService.start();
+        String lastEventId = events.get(events.size() - 1).getEventId();
+        movieInfoEventService.getEvents(null).filter(event -> event.getEventId().equals(lastEventId)).blockFirst(Duration.ofSeconds(5));
+
+        StepVerifier.create(movieInfoEventService.getEvents(null))
+                .expectNext(events.get(5))
+                .expectNextCount(REPLAY_HISTORY - 1)
+                .thenCancel()
+                .verify(Duration.ofSeconds(5));
+    }
+
+    @Test
+    void getEvents_tailsSettledEventsWrittenByAnyInstance() {
+        // written by another instance, so it only ever reaches this one through the collection
+        MovieInfoEvent written = event(MovieInfoEventType.DELETED);
+        List<List<String>> polls = Collections.synchronizedList(new ArrayList<>());
+        when(movieInfoEventRepositoryMock.findByEventIdBetweenOrderByEventId(anyString(), anyString()))
+                .thenAnswer(invocation -> {
+                    polls.add(Arrays.asList(invocation.getArgument(0), invocation.getArgument(1)));
+                    return polls.size() == 1 ? Flux.just(written) : Flux.empty();
+                });
+        movieInfoEventService.start();
+
+        StepVerifier.create(movieInfoEventService.getEvents(null))
+                .expectNext(written)
+                .thenCancel()
+                .verify(Duration.ofSeconds(5));
+
+        await(() -> polls.size() > 1);
+        assertEquals(written.getEventId(), polls.get(1).get(0));
+        long settledSeconds = new ObjectId(polls.get(1).get(1)).getTimestamp();
+        assertTrue(settledSeconds <= Instant.now().minus(SETTLE_DELAY).getEpochSecond());
+    }
+
+    @Test
+    void getEvents_resumesFromRepositoryThenTail() {
+        MovieInfoEvent first = event(MovieInfoEventType.SAVED);
+        MovieInfoEvent second = event(MovieInfoEventType.SAVED);
+        MovieInfoEvent third = event(MovieInfoEventType.DELETED);
+        AtomicInteger polls = new AtomicInteger();
+        // the repository already has the second event, the tail must not deliver it twice
+        when(movieInfoEventRepositoryMock.findByEventIdBetweenOrderByEventId(anyString(), anyString()))
+                .thenAnswer(invocation -> {
+                    if (first.getEventId().equals(invocation.getArgument(0))) {
+                        return Flux.just(second);
+                    }
+                    return polls.getAndIncrement() == 0 ? Flux.just(second, third) : Flux.empty();
+                });
+        movieInfoEventService.start();
+
+        StepVerifier.create(movieInfoEventService.getEvents(first.getEventId()))
+                .expectNext(second)
+                .expectNext(third)
+                .thenCancel()
+                .verify(Duration.ofSeconds(5));
+    }
+
+    @Test
+    void publish_slowSaveHoldsBackLaterEvents() {
+        MovieInfo movieInfo = new MovieInfo("abc", "Dark Knight Rises", 2012, Arrays.asList("Christian Bale", "Tom Hardy"), LocalDate.parse("2012-07-20"));
+        AtomicInteger saves = new AtomicInteger();
+        AtomicBoolean firstSaved = new AtomicBoolean();
+        AtomicBoolean secondStartedAfterFirst = new AtomicBoolean();
+        when(movieInfoEventRepositoryMock.save(any(MovieInfoEvent.class)))
+                .thenAnswer(invocation -> {
+                    if (saves.getAndIncrement() == 0) {
+                        return Mono.delay(Duration.ofMillis(200))
+                                .thenReturn(invocation.getArgument(0))
+                                .doOnNext(saved -> firstSaved.set(true));
+                    }
+                    secondStartedAfterFirst.set(firstSaved.get());
+                    return Mono.just(invocation.getArgument(0));
+                });
+
+        Mono<MovieInfoEvent> first = movieInfoEventService.publish(MovieInfoEventType.SAVED, "abc", movieInfo).cache();
+        Mono<MovieInfoEvent> second = movieInfoEventService.publish(MovieInfoEventType.DELETED, "abc", null).cache();
+        first.subscribe();
+
+        // the second save is not even started until the first one is persisted
+        StepVerifier.create(second)
+                .assertNext(event -> assertEquals(MovieInfoEventType.DELETED, event.getType()))
+                .verifyComplete();
+        assertTrue(secondStartedAfterFirst.get());
+        assertTrue(first.block().getEventId().compareTo(second.block().getEventId()) < 0);
+    }
+
+    @Test
+    void publish_failedSaveIsPassedOnWithoutStallingLaterOnes() {
+        MovieInfo movieInfo = new MovieInfo("abc", "Dark Knight Rises", 2012, Arrays.asList("Christian Bale", "Tom Hardy"), LocalDate.parse("2012-07-20"));
+        when(movieInfoEventRepositoryMock.save(any(MovieInfoEvent.class)))
+                .thenReturn(Mono.error(new RuntimeException("mongo down")))
+                .thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+
+        StepVerifier.create(movieInfoEventService.publish(MovieInfoEventType.SAVED, "abc", movieInfo))
+                .expectErrorMessage("mongo down")
+                .verify(Duration.ofSeconds(5));
+
+        StepVerifier.create(movieInfoEventService.publish(MovieInfoEventType.DELETED, "abc", null))
+                .assertNext(event -> assertEquals(MovieInfoEventType.DELETED, event.getType()))
+                .verifyComplete();
+    }
+
+    @Test
+    void publish_stalledSaveFailsWritesBeyondTheQueueLimit() {
+        when(movieInfoEventRepositoryMock.save(any(MovieInfoEvent.class))).thenReturn(Mono.never());
+
+        for (int i = 0; i < MAX_PENDING_WRITES; i++) {
+            movieInfoEventService.publish(MovieInfoEventType.DELETED, "abc", null).subscribe();
+        }
+
+        StepVerifier.create(movieInfoEventService.publish(MovieInfoEventType.DELETED, "abc", null))
+                .expectErrorSatisfies(ex -> assertEquals(HttpStatus.SERVICE_UNAVAILABLE, ((ResponseStatusException) ex).getStatus()))
+                .verify(Duration.ofSeconds(5));
+    }
+
+    @Test
+    void publish_eventIdsKeepIncreasingPastTheLastOne() {
+        // an id ahead of anything new ObjectId() hands out now, with the counter about to wrap
+        ObjectId last = new ObjectId("7fffffff00000000ffffffff");
+        ReflectionTestUtils.setField(movieInfoEventService, "lastEventId", last);
+
+        MovieInfoEvent event = movieInfoEventService.publish(MovieInfoEventType.DELETED, "abc", null).block();
+
+        assertEquals("7fffffff0000000100000000", event.getEventId());
+    }
+
+    private MovieInfoEvent event(MovieInfoEventType type) {
+        return new MovieInfoEvent(new ObjectId().toHexString(), type, "abc", null, Instant.now());
+    }
+
+    private void await(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "Condition not met within 5s");
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    private void publish(MovieInfo movieInfo, int count) {
+        Flux.range(0, count)
+                .concatMap(i -> movieInfoEventService.publish(MovieInfoEventType.SAVED, movieInfo.getMovieInfoId(), movieInfo))
+                .blockLast();
+    }
+
+    private long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
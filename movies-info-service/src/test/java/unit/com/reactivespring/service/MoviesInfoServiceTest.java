@@ -0,0 +1,58 @@
+package com.reactivespring.service;
+
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieInfoEvent;
+import com.reactivespring.domain.MovieInfoEventType;
+import com.reactivespring.repository.MovieInfoRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.*;
+
+class MoviesInfoServiceTest {
+
+    private ReactiveMongoTemplate reactiveMongoTemplateMock;
+    private MovieInfoEventService movieInfoEventServiceMock;
+    private MoviesInfoService moviesInfoService;
+
+    @BeforeEach
+    void setUp() {
+        reactiveMongoTemplateMock = mock(ReactiveMongoTemplate.class);
+        movieInfoEventServiceMock = mock(MovieInfoEventService.class);
+        moviesInfoService = new MoviesInfoService(mock(MovieInfoRepository.class), movieInfoEventServiceMock, reactiveMongoTemplateMock);
+    }
+
+    @Test
+    void deleteMovieInfo_publishesDeletedEvent() {
+        MovieInfo movieInfo = new MovieInfo("abc", "Dark Knight Rises", 2012, Arrays.asList("Christian Bale", "Tom Hardy"), LocalDate.parse("2012-07-20"));
+        when(reactiveMongoTemplateMock.findAndRemove(any(Query.class), eq(MovieInfo.class))).thenReturn(Mono.just(movieInfo));
+        when(movieInfoEventServiceMock.publish(MovieInfoEventType.DELETED, "abc", null))
+                .thenReturn(Mono.just(new MovieInfoEvent("62a0c0f1e4b0a1a2b3c4d5e7", MovieInfoEventType.DELETED, "abc", null, Instant.now())));
+
+        StepVerifier.create(moviesInfoService.deleteMovieInfo("abc"))
+                .verifyComplete();
+
+        verify(movieInfoEventServiceMock).publish(MovieInfoEventType.DELETED, "abc", null);
+    }
+
+    @Test
+    void deleteMovieInfo_unknownIdPublishesNothing() {
+        when(reactiveMongoTemplateMock.findAndRemove(any(Query.class), eq(MovieInfo.class))).thenReturn(Mono.empty());
+
+        StepVerifier.create(moviesInfoService.deleteMovieInfo("def"))
+                .verifyComplete();
+
+        verify(movieInfoEventServiceMock, never()).publish(any(), any(), isNull());
+    }
+}
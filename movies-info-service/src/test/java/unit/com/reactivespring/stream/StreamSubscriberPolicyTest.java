@@ -0,0 +1,93 @@
+package com.reactivespring.stream;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StreamSubscriberPolicyTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private StreamSubscriberPolicy policy(OverflowStrategy overflowStrategy) {
+        return new StreamSubscriberPolicy(meterRegistry, 1, overflowStrategy, 2);
+    }
+
+    @Test
+    void dropOldest() {
+        Sinks.Many<Integer> sink = Sinks.many().multicast().directBestEffort();
+
+        StepVerifier.create(policy(OverflowStrategy.DROP_OLDEST).apply("test", sink.asFlux()), 0)
+                .then(() -> Flux.range(1, 5).subscribe(sink::tryEmitNext))
+                .thenRequest(2)
+                .expectNext(4, 5)
+                .thenCancel()
+                .verify();
+
+        assertEquals(3, meterRegistry.get("stream.subscriber.dropped").counter().count());
+    }
+
+    @Test
+    void dropLatest() {
+        Sinks.Many<Integer> sink = Sinks.many().multicast().directBestEffort();
+
+        StepVerifier.create(policy(OverflowStrategy.DROP_LATEST).apply("test", sink.asFlux()), 0)
+                .then(() -> Flux.range(1, 5).subscribe(sink::tryEmitNext))
+                .thenRequest(2)
+                .expectNext(1, 2)
+                .thenCancel()
+                .verify();
+
+        assertEquals(3, meterRegistry.get("stream.subscriber.dropped").counter().count());
+    }
+
+    @Test
+    void buffer_disconnectsOnceFull() {
+        Sinks.Many<Integer> sink = Sinks.many().multicast().directBestEffort();
+
+        StepVerifier.create(policy(OverflowStrategy.BUFFER).apply("test", sink.asFlux()), 0)
+                .then(() -> Flux.range(1, 3).subscribe(sink::tryEmitNext))
+                .thenRequest(2)
+                .expectNext(1, 2)
+                .expectErrorMatches(Exceptions::isOverflow)
+                .verify();
+
+        assertEquals(1, meterRegistry.get("stream.subscribers.disconnected").counter().count());
+        assertEquals(0, meterRegistry.get("stream.subscribers.active").gauge().value());
+    }
+
+    @Test
+    void disconnect_slowSubscriber() {
+        Sinks.Many<Integer> sink = Sinks.many().multicast().directBestEffort();
+
+        StepVerifier.create(policy(OverflowStrategy.DISCONNECT).apply("test", sink.asFlux()), 1)
+                .then(() -> Flux.range(1, 2).subscribe(sink::tryEmitNext))
+                .expectNext(1)
+                .expectErrorMatches(Exceptions::isOverflow)
+                .verify();
+    }
+
+    @Test
+    void maxSubscribers() {
+        StreamSubscriberPolicy policy = policy(OverflowStrategy.DROP_OLDEST);
+        Sinks.Many<Integer> sink = Sinks.many().multicast().directBestEffort();
+
+        StepVerifier.create(policy.apply("test", sink.asFlux()))
+                .then(() -> StepVerifier.create(policy.apply("test", sink.asFlux()))
+                        .expectErrorSatisfies(ex -> assertEquals(HttpStatus.SERVICE_UNAVAILABLE, ((ResponseStatusException) ex).getStatus()))
+                        .verify())
+                .then(() -> sink.tryEmitNext(1))
+                .expectNext(1)
+                .thenCancel()
+                .verify();
+
+        assertEquals(1, meterRegistry.get("stream.subscribers.rejected").counter().count());
+        assertEquals(0, meterRegistry.get("stream.subscribers.active").gauge().value());
+    }
+}
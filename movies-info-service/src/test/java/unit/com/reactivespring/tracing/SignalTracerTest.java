@@ -0,0 +1,43 @@
+package com.reactivespring.tracing;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SignalTracerTest {
+
+    @Test
+    void trace_disabled() {
+        SignalTracer signalTracer = new SignalTracer(false, 1.0, Collections.emptySet());
+        Flux<Integer> source = Flux.range(1, 3);
+
+        assertSame(source, signalTracer.trace("route", source));
+    }
+
+    @Test
+    void trace_otherRoute() {
+        SignalTracer signalTracer = new SignalTracer(true, 1.0, Collections.singleton("traced"));
+        Mono<String> source = Mono.just("value");
+
+        assertSame(source, signalTracer.trace("untraced", source));
+        assertNotSame(source, signalTracer.trace("traced", source));
+    }
+
+    @Test
+    void trace_sampled() {
+        SignalTracer signalTracer = new SignalTracer(true, 1.0, Collections.emptySet());
+
+        StepVerifier.create(signalTracer.trace("route", Flux.range(1, 3)))
+                .expectNext(1, 2, 3)
+                .verifyComplete();
+
+        StepVerifier.create(signalTracer.trace("route", Mono.error(new IllegalStateException())))
+                .expectError(IllegalStateException.class)
+                .verify();
+    }
+}
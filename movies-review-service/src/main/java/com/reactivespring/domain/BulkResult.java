@@ -0,0 +1,34 @@
+package com.reactivespring.domain;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BulkResult {
+
+    public enum Status {
+        CREATED, INVALID, FAILED
+    }
+
+    private long index;
+    private Status status;
+    private String id;
+    private String error;
+
+    public static BulkResult created(long index, String id) {
+        return new BulkResult(index, Status.CREATED, id, null);
+    }
+
+    public static BulkResult invalid(long index, String error) {
+        return new BulkResult(index, Status.INVALID, null, error);
+    }
+
+    public static BulkResult failed(long index, String error) {
+        return new BulkResult(index, Status.FAILED, null, error);
+    }
+}
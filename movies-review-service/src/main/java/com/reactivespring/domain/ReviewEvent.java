@@ -0,0 +1,17 @@
+package com.reactivespring.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReviewEvent {
+
+    // change stream resume token (_data), usable as Last-Event-ID
+    private String eventId;
+    private ReviewEventType type;
+    private String reviewId;
+    private Review review;
+}
@@ -0,0 +1,43 @@
+package com.reactivespring.domain;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Document
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ReviewSummary {
+
+    @Id
+    private Long movieInfoId;
+    private long count;
+    private double sum;
+    private Double min;
+    private Double max;
+    // rating counts per whole-number bucket, "8" holds ratings from 8.0 up to but excluding 9.0
+    private Map<String, Long> histogram = new HashMap<>();
+    @JsonIgnore
+    private long revision;
+
+    public ReviewSummary(Long movieInfoId, long count, double sum, Double min, Double max, Map<String, Long> histogram) {
+        this(movieInfoId, count, sum, min, max, histogram, 0);
+    }
+
+    public static ReviewSummary empty(Long movieInfoId) {
+        return new ReviewSummary(movieInfoId, 0, 0, null, null, new HashMap<>());
+    }
+
+    public Double getAverage() {
+        return count == 0 ? null : sum / count;
+    }
+}
@@ -1,21 +1,49 @@
 package com.reactivespring.handler;
 
+import com.reactivespring.domain.BulkResult;
 import com.reactivespring.domain.Review;
+import com.reactivespring.domain.ReviewEvent;
+import com.reactivespring.domain.ReviewEventType;
+import com.reactivespring.domain.ReviewSummary;
 import com.reactivespring.exception.ReviewDataException;
 import com.reactivespring.exception.ReviewNotFoundException;
 import com.reactivespring.repository.ReviewReactiveRepository;
+import com.reactivespring.service.ReviewBulkService;
+import com.reactivespring.service.ReviewSummaryService;
+import com.reactivespring.stream.ReviewChangeStream;
+import com.reactivespring.stream.StreamSubscriberPolicy;
+import com.reactivespring.tracing.SignalTracer;
+import com.reactivespring.util.EntityTags;
 import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.server.ServerRequest;
 import org.springframework.web.reactive.function.server.ServerResponse;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.util.UriComponentsBuilder;
+import org.springframework.web.util.UriUtils;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import reactor.core.publisher.Sinks;
 
 import javax.validation.ConstraintViolation;
 import javax.validation.Validator;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -23,65 +51,275 @@ import java.util.stream.Collectors;
 @Component
 @Slf4j
 public class ReviewHandler {
-    private Sinks.Many<Review> reviewsSink = Sinks.many().replay().latest();
+    private static final Set<String> PROJECTABLE_FIELDS = new HashSet<>(Arrays.asList("movieInfoId", "comment", "rating"));
 
     final private ReviewReactiveRepository reviewReactiveRepository;
+    final private ReviewChangeStream reviewChangeStream;
+    final private StreamSubscriberPolicy streamSubscriberPolicy;
+    final private SignalTracer signalTracer;
     final private Validator validator;
+    final private ReactiveMongoTemplate reactiveMongoTemplate;
+    final private ReviewSummaryService reviewSummaryService;
+    final private ReviewBulkService reviewBulkService;
+    final private EntityTags entityTags;
 
-    public ReviewHandler(ReviewReactiveRepository reviewReactiveRepository, Validator validator) {
+    @Value("${reviews.pagination.max-limit:1000}")
+    private int maxLimit;
+
+    public ReviewHandler(ReviewReactiveRepository reviewReactiveRepository, ReviewChangeStream reviewChangeStream,
+                         StreamSubscriberPolicy streamSubscriberPolicy, SignalTracer signalTracer, Validator validator,
+                         ReactiveMongoTemplate reactiveMongoTemplate, ReviewSummaryService reviewSummaryService,
+                         ReviewBulkService reviewBulkService, EntityTags entityTags) {
         this.reviewReactiveRepository = reviewReactiveRepository;
+        this.reviewChangeStream = reviewChangeStream;
+        this.streamSubscriberPolicy = streamSubscriberPolicy;
+        this.signalTracer = signalTracer;
         this.validator = validator;
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+        this.reviewSummaryService = reviewSummaryService;
+        this.reviewBulkService = reviewBulkService;
+        this.entityTags = entityTags;
     }
 
     public Mono<ServerResponse> addReview(ServerRequest request) {
         return request.bodyToMono(Review.class)
                 .doOnNext(this::validate)
-                .flatMap(reviewReactiveRepository::save)
-                .doOnNext(review -> {
-                    reviewsSink.tryEmitNext(review);
-                })
+                .flatMap(this::insert)
+                .flatMap(savedReview -> reviewSummaryService.reviewAdded(savedReview).thenReturn(savedReview))
                 .flatMap(ServerResponse.status(HttpStatus.CREATED)::bodyValue);
     }
 
+    private Mono<Review> insert(Review review) {
+        review.setVersion(null);
+        return reviewReactiveRepository.insert(review)
+                .onErrorMap(DuplicateKeyException.class, ex -> new ResponseStatusException(HttpStatus.CONFLICT,
+                        "review.reviewId: " + review.getReviewId() + " already exists"));
+    }
+
+    public Mono<ServerResponse> getReviewSummary(ServerRequest request) {
+        List<String> movieInfoIds = request.queryParams().get("movieInfoIds");
+        if (movieInfoIds != null) {
+            Flux<ReviewSummary> summaries = Mono.fromCallable(() -> parseMovieInfoIds(movieInfoIds))
+                    .flatMapMany(reviewSummaryService::getSummaries);
+            return ok(request).body(summaries, ReviewSummary.class);
+        }
+
+        Long movieInfoId = request.queryParam("movieInfoId")
+                .map(id -> parseMovieInfoIds(Collections.singletonList(id)))
+                .filter(ids -> ids.size() == 1)
+                .map(ids -> ids.get(0))
+                .orElseThrow(() -> new ReviewDataException("review.movieInfoId: must be present"));
+        return reviewSummaryService.getSummary(movieInfoId)
+                .flatMap(summary -> tagged(request, summary)
+                        .bodyValue(summary));
+    }
+
+    public Mono<ServerResponse> rebuildReviewSummaries(ServerRequest request) {
+        Long movieInfoId = request.queryParam("movieInfoId")
+                .map(id -> parseMovieInfoIds(Collections.singletonList(id)))
+                .map(ids -> {
+                    if (ids.size() != 1) {
+                        throw new ReviewDataException("review.movieInfoId: must be a single number");
+                    }
+                    return ids.get(0);
+                })
+                .orElse(null);
+        return reviewSummaryService.rebuild(movieInfoId)
+                .then(ServerResponse.noContent().build());
+    }
+
+    public Mono<ServerResponse> addReviews(ServerRequest request) {
+        Flux<BulkResult> results = reviewBulkService.addReviews(request.bodyToFlux(String.class));
+
+        return ServerResponse.status(HttpStatus.OK)
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(signalTracer.trace("reviews.bulk", results), BulkResult.class);
+    }
+
     public Mono<ServerResponse> getReviews(ServerRequest request) {
+        List<String> fields = parseFields(request.queryParams().get("fields"));
+
+        List<String> movieInfoIds = request.queryParams().get("movieInfoIds");
+        if (movieInfoIds != null) {
+            Flux<Review> reviewsByMovieInfoIds = Mono.fromCallable(() -> parseMovieInfoIds(movieInfoIds))
+                    .flatMapMany(ids -> fields == null
+                            ? reviewReactiveRepository.findReviewsByMovieInfoIdInOrderByMovieInfoId(ids)
+                            : reactiveMongoTemplate.find(projected(fields)
+                                    .addCriteria(Criteria.where("movieInfoId").in(ids))
+                                    .with(Sort.by("movieInfoId")), Review.class));
+            return buildReviewsResponse(request, reviewsByMovieInfoIds);
+        }
+
         Optional<String> moveInfoId = request.queryParam("movieInfoId");
         if (moveInfoId.isPresent()) {
-            Flux<Review> reviewsByMovieInfoId = reviewReactiveRepository.findReviewsByMovieInfoId(Long.valueOf(moveInfoId.get()));
-            return buildReviewsResponse(reviewsByMovieInfoId);
+            Long movieInfoId = Long.valueOf(moveInfoId.get());
+            Flux<Review> reviewsByMovieInfoId = fields == null
+                    ? reviewReactiveRepository.findReviewsByMovieInfoId(movieInfoId)
+                    : reactiveMongoTemplate.find(projected(fields).addCriteria(Criteria.where("movieInfoId").is(movieInfoId)), Review.class);
+            return buildReviewsResponse(request, reviewsByMovieInfoId);
         } else {
-            Flux<Review> reviewsFlux = reviewReactiveRepository.findAll();
-            return buildReviewsResponse(reviewsFlux);
+            return getReviewsPage(request, fields);
+        }
+    }
+
+    private Mono<ServerResponse> getReviewsPage(ServerRequest request, List<String> fields) {
+        int pageSize = request.queryParam("limit")
+                .map(this::parseLimit)
+                .map(limit -> Math.max(1, Math.min(limit, maxLimit)))
+                .orElse(maxLimit);
+        String after = request.queryParam("after").orElse(null);
+
+        Flux<Review> reviewsFlux = fields == null
+                ? findPage(after, PageRequest.of(0, pageSize + 1, Sort.by("reviewId")))
+                : findProjectedPage(after, pageSize + 1, fields);
+
+        return reviewsFlux.collectList()
+                .flatMap(reviews -> {
+                    if (reviews.size() <= pageSize) {
+                        return tagged(request, reviews)
+                                .body(Flux.fromIterable(reviews), Review.class);
+                    }
+                    List<Review> pageContent = reviews.subList(0, pageSize);
+                    String next = UriComponentsBuilder.fromUri(request.uri())
+                            .replaceQueryParam("limit", pageSize)
+                            .replaceQueryParam("after", UriUtils.encodeQueryParam(pageContent.get(pageSize - 1).getReviewId(), StandardCharsets.UTF_8))
+                            .build(true)
+                            .toUriString();
+                    return tagged(request, pageContent)
+                            .header(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"")
+                            .body(Flux.fromIterable(pageContent), Review.class);
+                });
+    }
+
+    private Flux<Review> findPage(String after, Pageable pageable) {
+        if (after == null) {
+            return reviewReactiveRepository.findAllBy(pageable);
+        }
+        return ObjectId.isValid(after)
+                ? reviewReactiveRepository.findByReviewIdGreaterThan(after, pageable)
+                : reviewReactiveRepository.findAfterStringId(after, pageable);
+    }
+
+    private Flux<Review> findProjectedPage(String after, int limit, List<String> fields) {
+        Query query = projected(fields);
+        if (after != null) {
+            query.addCriteria(ObjectId.isValid(after)
+                    ? Criteria.where("reviewId").gt(after)
+                    : new Criteria().orOperator(Criteria.where("reviewId").gt(after), Criteria.where("reviewId").type(7)));
         }
+        return reactiveMongoTemplate.find(query.with(Sort.by("reviewId")).limit(limit), Review.class);
     }
 
+    private List<String> parseFields(List<String> fields) {
+        if (fields == null) {
+            return null;
+        }
+        List<String> parsed = fields.stream()
+                .flatMap(value -> Arrays.stream(value.split(",")))
+                .map(String::trim)
+                .filter(field -> !field.isEmpty())
+                .collect(Collectors.toList());
+        parsed.stream()
+                .filter(field -> !PROJECTABLE_FIELDS.contains(field))
+                .findFirst()
+                .ifPresent(field -> {
+                    throw new ReviewDataException("review.fields: unknown field " + field);
+                });
+        return parsed;
+    }
+
+    private Query projected(List<String> fields) {
+        Query query = new Query();
+        fields.forEach(field -> query.fields().include(field));
+        return query;
+    }
+
+    private int parseLimit(String limit) {
+        try {
+            return Integer.parseInt(limit);
+        } catch (NumberFormatException ex) {
+            throw new ReviewDataException("review.limit: must be a number");
+        }
+    }
+
+    // findAndModify hands back the replaced revision, so the summary moves by the rating really overwritten
     public Mono<ServerResponse> updateReview(ServerRequest request) {
         String reviewId = request.pathVariable("id");
-        Mono<Review> foundReview = reviewReactiveRepository.findById(reviewId)
-                .switchIfEmpty(Mono.error(new ReviewNotFoundException("Review not found for the given id "+ reviewId)));
 
-        return foundReview
-                .flatMap(review -> request.bodyToMono(Review.class)
-                        .map(reqReview -> {
-                            review.setComment(reqReview.getComment());
-                            review.setRating(reqReview.getRating());
-                            return review;
-                        })
-                        .flatMap(reviewReactiveRepository::save)
-                        .flatMap(ServerResponse.status(HttpStatus.OK)::bodyValue)
-                );
+        return request.bodyToMono(Review.class)
+                .flatMap(reqReview -> {
+                    Query query = Query.query(Criteria.where("reviewId").is(reviewId));
+                    if (reqReview.getVersion() != null) {
+                        query.addCriteria(Criteria.where("version").is(reqReview.getVersion()));
+                    }
+                    Update update = new Update()
+                            .set("comment", reqReview.getComment())
+                            .set("rating", reqReview.getRating())
+                            .inc("version", 1);
+
+                    return reactiveMongoTemplate.findAndModify(query, update, Review.class)
+                            .switchIfEmpty(reviewMissing(reviewId, reqReview.getVersion()))
+                            .flatMap(previous -> {
+                                Review updatedReview = new Review(previous.getReviewId(), previous.getMovieInfoId(),
+                                        reqReview.getComment(), reqReview.getRating(),
+                                        previous.getVersion() == null ? 1L : previous.getVersion() + 1);
+                                return reviewSummaryService.reviewUpdated(previous.getMovieInfoId(), previous.getRating(), updatedReview.getRating())
+                                        .thenReturn(updatedReview);
+                            });
+                })
+                .flatMap(ServerResponse.status(HttpStatus.OK)::bodyValue);
     }
 
     public Mono<ServerResponse> deleteReview(ServerRequest request) {
         String reviewId = request.pathVariable("id");
-        Mono<Review> foundReview = reviewReactiveRepository.findById(reviewId);
 
-        return foundReview
-                .flatMap(review -> reviewReactiveRepository.deleteById(reviewId))
+        return reactiveMongoTemplate.findAndRemove(Query.query(Criteria.where("reviewId").is(reviewId)), Review.class)
+                .flatMap(reviewSummaryService::reviewRemoved)
                 .then(ServerResponse.status(HttpStatus.NO_CONTENT).build());
     }
 
-    private Mono<ServerResponse> buildReviewsResponse(Flux<Review> reviewsFlux) {
-        return ServerResponse.status(HttpStatus.OK).body(reviewsFlux, Review.class);
+    private Mono<Review> reviewMissing(String reviewId, Long version) {
+        Mono<Review> notFound = Mono.error(new ReviewNotFoundException("Review not found for the given id " + reviewId));
+        if (version == null) {
+            return notFound;
+        }
+        return Mono.defer(() -> reviewReactiveRepository.existsById(reviewId))
+                .flatMap(exists -> exists
+                        ? Mono.error(new ResponseStatusException(HttpStatus.CONFLICT, "review.version: " + version + " is no longer current"))
+                        : notFound);
+    }
+
+    private Mono<ServerResponse> buildReviewsResponse(ServerRequest request, Flux<Review> reviewsFlux) {
+        return ok(request).body(reviewsFlux, Review.class);
+    }
+
+    // functional responses always pick the JSON codec first, so Smile is negotiated here
+    private ServerResponse.BodyBuilder ok(ServerRequest request) {
+        ServerResponse.BodyBuilder builder = ServerResponse.status(HttpStatus.OK);
+        MediaType contentType = entityTags.negotiate(request.headers().accept());
+        return EntityTags.SMILE.equals(contentType) ? builder.contentType(contentType) : builder;
+    }
+
+    private ServerResponse.BodyBuilder tagged(ServerRequest request, Object body) {
+        MediaType contentType = entityTags.negotiate(request.headers().accept());
+        return ServerResponse.status(HttpStatus.OK)
+                .contentType(contentType)
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT)
+                .eTag(entityTags.of(body, contentType));
+    }
+
+    private List<Long> parseMovieInfoIds(List<String> movieInfoIds) {
+        try {
+            return movieInfoIds.stream()
+                    .flatMap(ids -> Arrays.stream(ids.split(",")))
+                    .map(String::trim)
+                    .filter(id -> !id.isEmpty())
+                    .map(Long::valueOf)
+                    .distinct()
+                    .collect(Collectors.toList());
+        } catch (NumberFormatException ex) {
+            throw new ReviewDataException("review.movieInfoIds: must be a comma separated list of numbers");
+        }
     }
 
     private void validate(Review review) {
@@ -98,9 +336,21 @@ public class ReviewHandler {
     }
 
     public Mono<ServerResponse> getReviewsAsStream(ServerRequest request) {
+        Flux<Review> savedReviews = reviewChangeStream.events(null)
+                .filter(event -> event.getType() == ReviewEventType.SAVED)
+                .map(ReviewEvent::getReview);
+
+        return ServerResponse.status(HttpStatus.OK)
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(signalTracer.trace("reviews.stream", streamSubscriberPolicy.apply("reviews", savedReviews)), Review.class);
+    }
+
+    public Mono<ServerResponse> getReviewEvents(ServerRequest request) {
+        String lastEventId = request.queryParam("after")
+                .orElseGet(() -> request.headers().firstHeader("Last-Event-ID"));
+
         return ServerResponse.status(HttpStatus.OK)
                 .contentType(MediaType.APPLICATION_NDJSON)
-                .body(reviewsSink.asFlux(), Review.class)
-                .log();
+                .body(streamSubscriberPolicy.apply("review-events", reviewChangeStream.events(lastEventId)), ReviewEvent.class);
     }
 }
@@ -1,12 +1,25 @@
 package com.reactivespring.repository;
 
 import com.reactivespring.domain.Review;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.repository.Query;
 import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
 import org.springframework.stereotype.Repository;
 import reactor.core.publisher.Flux;
 
+import java.util.List;
+
 @Repository
 public interface ReviewReactiveRepository extends ReactiveMongoRepository<Review, String> {
 
     Flux<Review> findReviewsByMovieInfoId(Long movieInfoId);
+
+    Flux<Review> findReviewsByMovieInfoIdInOrderByMovieInfoId(List<Long> movieInfoIds);
+
+    Flux<Review> findAllBy(Pageable pageable);
+
+    Flux<Review> findByReviewIdGreaterThan(String after, Pageable pageable);
+
+    @Query("{ '$or': [ { '_id': { '$gt': ?0 } }, { '_id': { '$type': 'objectId' } } ] }")
+    Flux<Review> findAfterStringId(String after, Pageable pageable);
 }
@@ -17,10 +17,14 @@ public class ReviewRouter {
         return route()
                 .nest(path("/v1/reviews"), builder -> {
                     builder.POST("", reviewHandler::addReview)
+                            .POST("/bulk", reviewHandler::addReviews)
                             .GET("", reviewHandler::getReviews)
+                            .GET("/summary", reviewHandler::getReviewSummary)
+                            .POST("/summary/rebuild", reviewHandler::rebuildReviewSummaries)
                             .PUT("/{id}", reviewHandler::updateReview)
                             .DELETE("/{id}", reviewHandler::deleteReview)
-                            .GET("/stream", reviewHandler::getReviewsAsStream);
+                            .GET("/stream", reviewHandler::getReviewsAsStream)
+                            .GET("/events", reviewHandler::getReviewEvents);
                 })
                 .GET("/v1/helloworld", (request -> ServerResponse.ok().bodyValue("hello world")))
                 .build();
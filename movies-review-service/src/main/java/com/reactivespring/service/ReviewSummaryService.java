@@ -0,0 +1,217 @@
+package com.reactivespring.service;
+
+import com.reactivespring.domain.Review;
+import com.reactivespring.domain.ReviewSummary;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+@Service
+@Slf4j
+public class ReviewSummaryService {
+
+    private static final int MAX_RECOMPUTE_ATTEMPTS = 5;
+
+    final private ReactiveMongoTemplate reactiveMongoTemplate;
+
+    @Value("${reviews.summary.backfill-on-startup:true}")
+    private boolean backfillOnStartup;
+
+    public ReviewSummaryService(ReactiveMongoTemplate reactiveMongoTemplate) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+    }
+
+    // reviews written before summaries were maintained have none, so the first start fills them in
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (!backfillOnStartup) {
+            return;
+        }
+        reactiveMongoTemplate.exists(new Query(), ReviewSummary.class)
+                .filter(exists -> !exists)
+                .flatMap(empty -> rebuild())
+                .subscribe(null, ex -> log.error("Failed to backfill ReviewSummaries: {}", ex.getMessage()));
+    }
+
+    public Mono<Void> rebuild() {
+        return rebuild(null);
+    }
+
+    // recomputes the summaries from the reviews themselves; a write racing with it can still be
+    // overwritten, so it is meant for backfill and for repairing drift rather than as the update path
+    public Mono<Void> rebuild(Long movieInfoId) {
+        Criteria rated = Criteria.where("rating").ne(null);
+        Document match = new Document("rating", new Document("$ne", null));
+        if (movieInfoId != null) {
+            rated.and("movieInfoId").is(movieInfoId);
+            match.append("movieInfoId", movieInfoId);
+        }
+        String summaries = reactiveMongoTemplate.getCollectionName(ReviewSummary.class);
+        List<Document> pipeline = Arrays.asList(
+                new Document("$match", match),
+                new Document("$group", new Document("_id", new Document("movieInfoId", "$movieInfoId")
+                                .append("bucket", new Document("$toString", new Document("$toLong", new Document("$floor", "$rating")))))
+                        .append("n", new Document("$sum", 1L))
+                        .append("sum", new Document("$sum", "$rating"))
+                        .append("min", new Document("$min", "$rating"))
+                        .append("max", new Document("$max", "$rating"))),
+                new Document("$group", new Document("_id", "$_id.movieInfoId")
+                        .append("count", new Document("$sum", "$n"))
+                        .append("sum", new Document("$sum", "$sum"))
+                        .append("min", new Document("$min", "$min"))
+                        .append("max", new Document("$max", "$max"))
+                        .append("histogram", new Document("$push", new Document("k", "$_id.bucket").append("v", "$n")))),
+                new Document("$addFields", new Document("histogram", new Document("$arrayToObject", "$histogram"))
+                        .append("revision", new Document("$literal", 0L))),
+                new Document("$merge", new Document("into", summaries)
+                        .append("on", "_id")
+                        .append("whenMatched", Collections.singletonList(new Document("$addFields", new Document("count", "$$new.count")
+                                .append("sum", "$$new.sum")
+                                .append("min", "$$new.min")
+                                .append("max", "$$new.max")
+                                .append("histogram", "$$new.histogram")
+                                .append("revision", new Document("$add", Arrays.asList(new Document("$ifNull", Arrays.asList("$revision", 0L)), 1L))))))
+                        .append("whenNotMatched", "insert")));
+
+        return reactiveMongoTemplate.getCollection(reactiveMongoTemplate.getCollectionName(Review.class))
+                .flatMap(collection -> Mono.from(collection.aggregate(pipeline).toCollection()))
+                .then(Mono.defer(() -> reactiveMongoTemplate.findDistinct(Query.query(rated), "movieInfoId", Review.class, Long.class).collectList()))
+                .flatMap(rebuilt -> {
+                    // summaries of movies that no longer have a rated review
+                    if (movieInfoId == null) {
+                        return reactiveMongoTemplate.remove(Query.query(Criteria.where("movieInfoId").nin(rebuilt)), ReviewSummary.class);
+                    }
+                    return rebuilt.isEmpty()
+                            ? reactiveMongoTemplate.remove(Query.query(Criteria.where("movieInfoId").is(movieInfoId)), ReviewSummary.class)
+                            : Mono.empty();
+                })
+                .then();
+    }
+
+    public Mono<ReviewSummary> getSummary(Long movieInfoId) {
+        return reactiveMongoTemplate.findById(movieInfoId, ReviewSummary.class)
+                .defaultIfEmpty(ReviewSummary.empty(movieInfoId));
+    }
+
+    public Flux<ReviewSummary> getSummaries(List<Long> movieInfoIds) {
+        return reactiveMongoTemplate.find(Query.query(Criteria.where("movieInfoId").in(movieInfoIds)), ReviewSummary.class);
+    }
+
+    public Mono<Void> reviewAdded(Review review) {
+        return apply(review.getMovieInfoId(), Collections.emptyList(), Collections.singletonList(review.getRating()));
+    }
+
+    public Mono<Void> reviewsAdded(List<Review> reviews) {
+        Map<Long, List<Double>> ratingsByMovieInfoId = reviews.stream()
+                .filter(review -> review.getRating() != null)
+                .collect(Collectors.groupingBy(Review::getMovieInfoId,
+                        Collectors.mapping(Review::getRating, Collectors.toList())));
+
+        return Flux.fromIterable(ratingsByMovieInfoId.entrySet())
+                .flatMap(entry -> apply(entry.getKey(), Collections.emptyList(), entry.getValue()))
+                .then();
+    }
+
+    public Mono<Void> reviewUpdated(Long movieInfoId, Double previousRating, Double rating) {
+        return apply(movieInfoId, Collections.singletonList(previousRating), Collections.singletonList(rating));
+    }
+
+    public Mono<Void> reviewRemoved(Review review) {
+        return apply(review.getMovieInfoId(), Collections.singletonList(review.getRating()), Collections.emptyList());
+    }
+
+    private Mono<Void> apply(Long movieInfoId, List<Double> removed, List<Double> added) {
+        List<Double> removedRatings = removed.stream().filter(Objects::nonNull).collect(Collectors.toList());
+        List<Double> addedRatings = added.stream().filter(Objects::nonNull).collect(Collectors.toList());
+        if (removedRatings.isEmpty() && addedRatings.isEmpty()) {
+            return Mono.empty();
+        }
+
+        Update update = new Update()
+                .inc("count", addedRatings.size() - removedRatings.size())
+                .inc("sum", sum(addedRatings) - sum(removedRatings))
+                .inc("revision", 1);
+
+        Map<String, Long> histogramDeltas = new HashMap<>();
+        addedRatings.forEach(rating -> histogramDeltas.merge(bucket(rating), 1L, Long::sum));
+        removedRatings.forEach(rating -> histogramDeltas.merge(bucket(rating), -1L, Long::sum));
+        histogramDeltas.forEach((bucket, delta) -> {
+            if (delta != 0) {
+                update.inc("histogram." + bucket, delta);
+            }
+        });
+        if (!addedRatings.isEmpty()) {
+            update.min("min", Collections.min(addedRatings))
+                    .max("max", Collections.max(addedRatings));
+        }
+
+        return reactiveMongoTemplate.findAndModify(Query.query(Criteria.where("movieInfoId").is(movieInfoId)), update,
+                        FindAndModifyOptions.options().returnNew(true).upsert(true), ReviewSummary.class)
+                .flatMap(summary -> removedRatings.stream().anyMatch(rating -> rating.equals(summary.getMin()) || rating.equals(summary.getMax()))
+                        ? recomputeExtremes(movieInfoId, summary.getRevision(), MAX_RECOMPUTE_ATTEMPTS)
+                        : Mono.<Void>empty())
+                .onErrorResume(ex -> repair(movieInfoId, ex));
+    }
+
+    // the review itself is already written, so a summary that missed it is rebuilt rather than failing the request
+    private Mono<Void> repair(Long movieInfoId, Throwable error) {
+        log.warn("Failed to update ReviewSummary for movieInfoId {}, rebuilding it: {}", movieInfoId, error.getMessage());
+        return rebuild(movieInfoId)
+                .onErrorMap(repairError -> {
+                    log.error("Failed to rebuild ReviewSummary for movieInfoId {}: {}", movieInfoId, repairError.getMessage());
+                    error.addSuppressed(repairError);
+                    return error;
+                });
+    }
+
+    // $min/$max can't move back, so they are re-read and only written if the revision is unchanged
+    private Mono<Void> recomputeExtremes(Long movieInfoId, long revision, int attemptsLeft) {
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(Criteria.where("movieInfoId").is(movieInfoId).and("rating").ne(null)),
+                Aggregation.group().min("rating").as("min").max("rating").as("max"));
+        Query query = Query.query(Criteria.where("movieInfoId").is(movieInfoId).and("revision").is(revision));
+
+        return reactiveMongoTemplate.aggregate(aggregation, Review.class, Document.class)
+                .next()
+                .map(extremes -> new Update().set("min", extremes.get("min")).set("max", extremes.get("max")))
+                .defaultIfEmpty(new Update().unset("min").unset("max"))
+                .flatMap(update -> reactiveMongoTemplate.updateFirst(query, update.inc("revision", 1), ReviewSummary.class))
+                .flatMap(result -> {
+                    if (result.getMatchedCount() > 0) {
+                        return Mono.empty();
+                    }
+                    if (attemptsLeft <= 1) {
+                        return Mono.error(new IllegalStateException("ReviewSummary " + movieInfoId + " kept changing during min/max recompute"));
+                    }
+                    return reactiveMongoTemplate.findById(movieInfoId, ReviewSummary.class)
+                            .flatMap(latest -> recomputeExtremes(movieInfoId, latest.getRevision(), attemptsLeft - 1));
+                });
+    }
+
+    private static double sum(List<Double> ratings) {
+        return ratings.stream().mapToDouble(Double::doubleValue).sum();
+    }
+
+    private static String bucket(Double rating) {
+        return String.valueOf((long) Math.floor(rating));
+    }
+}
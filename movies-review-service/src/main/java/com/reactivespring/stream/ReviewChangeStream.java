@@ -0,0 +1,135 @@
+package com.reactivespring.stream;
+
+import com.mongodb.MongoException;
+import com.mongodb.client.model.changestream.OperationType;
+import com.reactivespring.domain.Review;
+import com.reactivespring.domain.ReviewEvent;
+import com.reactivespring.domain.ReviewEventType;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.springframework.data.mongodb.core.ChangeStreamEvent;
+import org.springframework.data.mongodb.core.ChangeStreamOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Set;
+
+@Component
+@Slf4j
+public class ReviewChangeStream {
+    private static final Set<OperationType> SAVE_OPERATIONS = EnumSet.of(OperationType.INSERT, OperationType.UPDATE, OperationType.REPLACE);
+    private static final int INVALID_RESUME_TOKEN = 260;
+    // ChangeStreamFatalError and ChangeStreamHistoryLost: the token is older than the oplog
+    private static final Set<Integer> HISTORY_LOST = new HashSet<>(Arrays.asList(280, 286));
+
+    final private ReactiveMongoTemplate reactiveMongoTemplate;
+    final private String collectionName;
+    final private Flux<ReviewEvent> sharedEvents;
+
+    private volatile String lastSharedEventId;
+
+    public ReviewChangeStream(ReactiveMongoTemplate reactiveMongoTemplate) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+        this.collectionName = reactiveMongoTemplate.getCollectionName(Review.class);
+
+        // one shared change stream cursor, reopened after the last seen token on failure, or from now
+        // once that token can no longer be resumed from
+        this.sharedEvents = Flux.defer(() -> watch(lastSharedEventId))
+                .doOnNext(event -> lastSharedEventId = event.getOperationType() == OperationType.INVALIDATE
+                        ? null
+                        : eventId(event))
+                .filter(this::isReviewChange)
+                .map(this::toReviewEvent)
+                .doOnError(this::onSharedError)
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1)).maxBackoff(Duration.ofSeconds(30)))
+                .repeatWhen(completed -> completed.delayElements(Duration.ofSeconds(1)))
+                .doOnCancel(() -> lastSharedEventId = null)
+                .share();
+    }
+
+    public Flux<ReviewEvent> events(String lastEventId) {
+        if (lastEventId == null) {
+            return sharedEvents;
+        }
+        return watch(lastEventId)
+                .filter(this::isReviewChange)
+                .map(this::toReviewEvent)
+                .onErrorMap(ex -> !isResumable(ex), ex -> new ResponseStatusException(
+                        errorCode(ex) == INVALID_RESUME_TOKEN ? HttpStatus.BAD_REQUEST : HttpStatus.GONE,
+                        "review.lastEventId: " + lastEventId + " can no longer be resumed, reconnect without it", ex));
+    }
+
+    private Flux<ChangeStreamEvent<Review>> watch(String resumeAfter) {
+        ChangeStreamOptions.ChangeStreamOptionsBuilder options = ChangeStreamOptions.builder()
+                .returnFullDocumentOnUpdate();
+        if (resumeAfter != null) {
+            options.resumeAfter(new BsonDocument("_data", new BsonString(resumeAfter)));
+        }
+        return reactiveMongoTemplate.changeStream(collectionName, options.build(), Review.class);
+    }
+
+    private void onSharedError(Throwable ex) {
+        if (isResumable(ex)) {
+            log.warn("Review change stream failed, resuming after {}: {}", lastSharedEventId, ex.getMessage());
+            return;
+        }
+        log.warn("Review change stream cannot resume after {}, reopening from now: {}", lastSharedEventId, ex.getMessage());
+        lastSharedEventId = null;
+    }
+
+    private boolean isResumable(Throwable ex) {
+        int code = errorCode(ex);
+        return code != INVALID_RESUME_TOKEN && !HISTORY_LOST.contains(code);
+    }
+
+    private int errorCode(Throwable ex) {
+        for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+            if (cause instanceof MongoException) {
+                return ((MongoException) cause).getCode();
+            }
+        }
+        return -1;
+    }
+
+    private boolean isReviewChange(ChangeStreamEvent<Review> event) {
+        return SAVE_OPERATIONS.contains(event.getOperationType()) || event.getOperationType() == OperationType.DELETE;
+    }
+
+    private String eventId(ChangeStreamEvent<Review> changeStreamEvent) {
+        BsonValue resumeToken = changeStreamEvent.getResumeToken();
+        return resumeToken != null && resumeToken.isDocument()
+                ? resumeToken.asDocument().getString("_data").getValue()
+                : null;
+    }
+
+    private ReviewEvent toReviewEvent(ChangeStreamEvent<Review> changeStreamEvent) {
+        String eventId = eventId(changeStreamEvent);
+        BsonDocument documentKey = changeStreamEvent.getRaw() != null ? changeStreamEvent.getRaw().getDocumentKey() : null;
+        String reviewId = documentKey != null ? idAsString(documentKey.get("_id")) : null;
+
+        if (changeStreamEvent.getOperationType() == OperationType.DELETE) {
+            return new ReviewEvent(eventId, ReviewEventType.DELETED, reviewId, null);
+        }
+        return new ReviewEvent(eventId, ReviewEventType.SAVED, reviewId, changeStreamEvent.getBody());
+    }
+
+    private String idAsString(BsonValue id) {
+        if (id == null) {
+            return null;
+        }
+        if (id.isObjectId()) {
+            return id.asObjectId().getValue().toHexString();
+        }
+        return id.isString() ? id.asString().getValue() : id.toString();
+    }
+}
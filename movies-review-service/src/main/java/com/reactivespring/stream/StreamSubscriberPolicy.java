@@ -0,0 +1,93 @@
+package com.reactivespring.stream;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.Exceptions;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+@Component
+@Slf4j
+public class StreamSubscriberPolicy {
+
+    final private MeterRegistry meterRegistry;
+    final private int maxSubscribers;
+    final private OverflowStrategy overflowStrategy;
+    final private int bufferSize;
+    final private AtomicInteger activeSubscribers = new AtomicInteger();
+
+    public StreamSubscriberPolicy(MeterRegistry meterRegistry,
+                                  @Value("${streams.max-subscribers:1000}") int maxSubscribers,
+                                  @Value("${streams.overflow-strategy:DROP_OLDEST}") OverflowStrategy overflowStrategy,
+                                  @Value("${streams.buffer-size:256}") int bufferSize) {
+        this.meterRegistry = meterRegistry;
+        this.maxSubscribers = maxSubscribers;
+        this.overflowStrategy = overflowStrategy;
+        this.bufferSize = bufferSize;
+
+        Gauge.builder("stream.subscribers.active", activeSubscribers, AtomicInteger::get)
+                .register(meterRegistry);
+    }
+
+    public <T> Flux<T> apply(String stream, Flux<T> source) {
+        return Flux.defer(() -> {
+            if (activeSubscribers.incrementAndGet() > maxSubscribers) {
+                activeSubscribers.decrementAndGet();
+                counter("stream.subscribers.rejected", stream).increment();
+                return Flux.error(new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Too many subscribers for stream " + stream));
+            }
+
+            AtomicLong lag = new AtomicLong();
+            DistributionSummary lagSummary = DistributionSummary.builder("stream.subscriber.lag")
+                    .tag("stream", stream)
+                    .register(meterRegistry);
+            Counter droppedCounter = counter("stream.subscriber.dropped", stream);
+
+            Flux<T> counted = source.doOnNext(element -> lag.incrementAndGet());
+
+            return withOverflowStrategy(counted, dropped -> {
+                        lag.decrementAndGet();
+                        droppedCounter.increment();
+                    })
+                    .doOnNext(element -> lagSummary.record(lag.decrementAndGet()))
+                    .doOnError(ex -> {
+                        if (Exceptions.isOverflow(ex)) {
+                            log.info("Disconnecting slow subscriber of stream {} lagging by {} elements", stream, lag.get());
+                            counter("stream.subscribers.disconnected", stream).increment();
+                        }
+                    })
+                    .doFinally(signalType -> activeSubscribers.decrementAndGet());
+        });
+    }
+
+    private <T> Flux<T> withOverflowStrategy(Flux<T> source, Consumer<T> onDropped) {
+        switch (overflowStrategy) {
+            case DROP_LATEST:
+                return source.onBackpressureBuffer(bufferSize, onDropped, BufferOverflowStrategy.DROP_LATEST);
+            case BUFFER:
+                return source.onBackpressureBuffer(bufferSize, onDropped, BufferOverflowStrategy.ERROR);
+            case DISCONNECT:
+                return source.onBackpressureError();
+            case DROP_OLDEST:
+            default:
+                return source.onBackpressureBuffer(bufferSize, onDropped, BufferOverflowStrategy.DROP_OLDEST);
+        }
+    }
+
+    private Counter counter(String name, String stream) {
+        return Counter.builder(name)
+                .tag("stream", stream)
+                .register(meterRegistry);
+    }
+}
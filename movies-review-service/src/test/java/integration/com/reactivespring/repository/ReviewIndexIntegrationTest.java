@@ -0,0 +1,144 @@
+package com.reactivespring.repository;
+
+import com.mongodb.MongoClientSettings;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.reactivespring.domain.Review;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Publisher;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DataMongoTest
+@ActiveProfiles("test")
+@Import(ReviewIndexIntegrationTest.CommandRecorder.class)
+class ReviewIndexIntegrationTest {
+
+    @Autowired
+    private ReactiveMongoTemplate reactiveMongoTemplate;
+
+    @Autowired
+    private ReviewReactiveRepository reviewReactiveRepository;
+
+    @Autowired
+    private CommandRecorder commandRecorder;
+
+    @Test
+    void findReviewsByMovieInfoId_usesIndex() {
+        assertIndexScan(Review.class, () -> reviewReactiveRepository.findReviewsByMovieInfoId(1L));
+    }
+
+    @Test
+    void findReviewsByMovieInfoIdInOrderByMovieInfoId_usesIndex() {
+        assertIndexScan(Review.class, () -> reviewReactiveRepository.findReviewsByMovieInfoIdInOrderByMovieInfoId(Arrays.asList(1L, 2L)));
+    }
+
+    // runs the query as the application does and explains exactly the find command it sent
+    private void assertIndexScan(Class<?> entityClass, Supplier<Publisher<?>> query) {
+        String collection = reactiveMongoTemplate.getCollectionName(entityClass);
+        awaitIndexes(collection);
+
+        commandRecorder.clear();
+        Flux.from(query.get()).blockLast();
+        BsonDocument sent = commandRecorder.lastFind(collection);
+        BsonDocument find = new BsonDocument("find", sent.get("find")).append("filter", sent.get("filter"));
+        if (sent.containsKey("sort")) {
+            find.append("sort", sent.get("sort"));
+        }
+        Document explain = reactiveMongoTemplate
+                .executeCommand(new Document("explain", find).append("verbosity", "queryPlanner"))
+                .block();
+
+        Document winningPlan = explain.get("queryPlanner", Document.class).get("winningPlan", Document.class);
+        List<String> stages = stages(winningPlan);
+        assertTrue(stages.contains("IXSCAN"), "expected IXSCAN for " + find.toJson() + " but was " + stages);
+        assertFalse(stages.contains("COLLSCAN"), "unexpected COLLSCAN for " + find.toJson());
+    }
+
+    // indexes are created asynchronously once the mapping context has seen the entity
+    private void awaitIndexes(String collection) {
+        for (int attempt = 0; attempt < 50; attempt++) {
+            Long indexes = reactiveMongoTemplate.getCollection(collection)
+                    .flatMapMany(mongoCollection -> mongoCollection.listIndexes())
+                    // the collection itself only appears with its first index
+                    .onErrorResume(ex -> Flux.empty())
+                    .count()
+                    .block();
+            if (indexes != null && indexes > 1) {
+                return;
+            }
+            sleep(Duration.ofMillis(100));
+        }
+    }
+
+    private List<String> stages(Document plan) {
+        List<String> stages = new ArrayList<>();
+        stages.add(plan.getString("stage"));
+        if (plan.containsKey("inputStage")) {
+            stages.addAll(stages(plan.get("inputStage", Document.class)));
+        }
+        if (plan.containsKey("inputStages")) {
+            for (Document inputStage : plan.getList("inputStages", Document.class)) {
+                stages.addAll(stages(inputStage));
+            }
+        }
+        return stages;
+    }
+
+    private void sleep(Duration duration) {
+        try {
+            Thread.sleep(duration.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    static class CommandRecorder implements MongoClientSettingsBuilderCustomizer, CommandListener {
+        private final List<BsonDocument> finds = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void customize(MongoClientSettings.Builder builder) {
+            builder.addCommandListener(this);
+        }
+
+        @Override
+        public void commandStarted(CommandStartedEvent event) {
+            if ("find".equals(event.getCommandName())) {
+                finds.add(event.getCommand().clone());
+            }
+        }
+
+        void clear() {
+            finds.clear();
+        }
+
+        BsonDocument lastFind(String collection) {
+            BsonDocument last = null;
+            for (BsonDocument find : finds) {
+                if (collection.equals(find.getString("find").getValue())) {
+                    last = find;
+                }
+            }
+            assertNotNull(last, "no find was sent to " + collection);
+            return last;
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package com.reactivespring.router;
 
+import com.reactivespring.domain.BulkResult;
 import com.reactivespring.domain.Review;
+import com.reactivespring.domain.ReviewSummary;
 import com.reactivespring.repository.ReviewReactiveRepository;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -8,10 +10,23 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.EntityExchangeResult;
 import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
+import java.net.URI;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -28,6 +43,12 @@ class ReviewRouterIntegrationTest {
     @Autowired
     ReviewReactiveRepository reviewReactiveRepository;
 
+    @Autowired
+    ReactiveMongoTemplate reactiveMongoTemplate;
+
+    @LocalServerPort
+    int port;
+
     @BeforeEach
     void setUp() {
         List<Review> reviewsList = Arrays.asList(
@@ -42,6 +63,7 @@ class ReviewRouterIntegrationTest {
     @AfterEach
     void tearDown() {
         reviewReactiveRepository.deleteAll().block();
+        reactiveMongoTemplate.remove(new Query(), ReviewSummary.class).block();
     }
 
     @Test
@@ -59,6 +81,48 @@ class ReviewRouterIntegrationTest {
 
     }
 
+    @Test
+    void getAllReviews_paginated() {
+        List<String> reviewIds = new ArrayList<>();
+        String uri = REVIEWS_URL + "?limit=2";
+        int pages = 0;
+        while (uri != null) {
+            EntityExchangeResult<List<Review>> result = webTestClient
+                    .get()
+                    .uri(uri)
+                    .exchange()
+                    .expectStatus()
+                    .is2xxSuccessful()
+                    .expectBodyList(Review.class)
+                    .returnResult();
+            result.getResponseBody().forEach(review -> reviewIds.add(review.getReviewId()));
+            pages++;
+
+            String link = result.getResponseHeaders().getFirst(HttpHeaders.LINK);
+            URI next = link == null ? null : URI.create(link.substring(1, link.indexOf('>')));
+            uri = next == null ? null : next.getRawPath() + "?" + next.getRawQuery();
+        }
+
+        assertEquals(2, pages);
+        assertEquals(3, new HashSet<>(reviewIds).size());
+    }
+
+    @Test
+    void getReviewsByMovieInfoId_fields() {
+        webTestClient
+                .get()
+                .uri(REVIEWS_URL + "?movieInfoId=1&fields=rating")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(2)
+                .jsonPath("$[0].reviewId").exists()
+                .jsonPath("$[0].rating").isEqualTo(9.0)
+                .jsonPath("$[0].comment").doesNotExist()
+                .jsonPath("$[0].movieInfoId").doesNotExist();
+    }
+
     @Test
     void getReviewsByMovieInfoId() {
         webTestClient
@@ -76,6 +140,27 @@ class ReviewRouterIntegrationTest {
 
     }
 
+    @Test
+    void getReviewsByMovieInfoIds() {
+        reviewReactiveRepository.save(new Review(null, 3L, "Not in the batch", 5.0)).block();
+
+        webTestClient
+                .get()
+                .uri(uriBuilder -> uriBuilder.path(REVIEWS_URL)
+                        .queryParam("movieInfoIds", "2,1")
+                        .build())
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBodyList(Review.class)
+                .value(reviewList -> {
+                    assertEquals(3, reviewList.size());
+                    assertEquals(1L, reviewList.get(0).getMovieInfoId());
+                    assertEquals(1L, reviewList.get(1).getMovieInfoId());
+                    assertEquals(2L, reviewList.get(2).getMovieInfoId());
+                });
+    }
+
     @Test
     void addReview() {
         Review review = new Review(null, 1L, "Awesome Movie", 9.0);
@@ -96,6 +181,59 @@ class ReviewRouterIntegrationTest {
                 });
     }
 
+    @Test
+    void addReviews() {
+        String body = "{\"reviewId\": \"bulk1\", \"movieInfoId\": 3, \"comment\": \"Good Movie\", \"rating\": 7.0}\n"
+                + "{\"movieInfoId\": null, \"comment\": \"No Movie\", \"rating\": 7.0}\n"
+                + "{\"reviewId\": \"bulk1\", \"movieInfoId\": 3, \"comment\": \"Duplicate\", \"rating\": 7.0}\n"
+                + "{\"movieInfoId\": 3, \"comment\": \"Great Movie\", \"rating\": 9.0}\n";
+
+        webTestClient
+                .post()
+                .uri(REVIEWS_URL+"/bulk")
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .bodyValue(body)
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBodyList(BulkResult.class)
+                .value(results -> {
+                    assertEquals(4, results.size());
+                    assertEquals(BulkResult.Status.CREATED, results.get(0).getStatus());
+                    assertEquals("bulk1", results.get(0).getId());
+                    assertEquals(BulkResult.Status.INVALID, results.get(1).getStatus());
+                    assertEquals(BulkResult.Status.FAILED, results.get(2).getStatus());
+                    assertEquals(BulkResult.Status.CREATED, results.get(3).getStatus());
+                    assertNotNull(results.get(3).getId());
+                });
+
+        assertEquals(2, reviewReactiveRepository.findReviewsByMovieInfoId(3L).count().block());
+        // bulk lines start at the same version as a single POST
+        assertEquals(0L, reviewReactiveRepository.findById("bulk1").block().getVersion());
+    }
+
+    @Test
+    void addReview_existingId() {
+        addReview(new Review("dup", 1L, "Awesome Movie", 9.0));
+
+        webTestClient
+                .post()
+                .uri(REVIEWS_URL)
+                .bodyValue(new Review("dup", 1L, "Overwrite", 1.0))
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.CONFLICT);
+
+        assertEquals("Awesome Movie", reviewReactiveRepository.findById("dup").block().getComment());
+    }
+
+    @Test
+    void addReview_echoedVersionIsDropped() {
+        Review savedReview = addReview(new Review(null, 1L, "Awesome Movie", 9.0, 7L));
+
+        assertNotNull(savedReview);
+        assertEquals(0L, savedReview.getVersion());
+    }
+
     @Test
     void updateReview() {
         Review review = new Review(null, 1L, "Awesome Movie", 9.0);
@@ -137,4 +275,116 @@ class ReviewRouterIntegrationTest {
                 .expectStatus()
                 .isNoContent();
     }
-}
\ No newline at end of file
+
+    @Test
+    void getReviewSummary_followsAddUpdateAndDelete() {
+        Review low = addReview(new Review(null, 5L, "Fine", 6.0));
+        Review high = addReview(new Review(null, 5L, "Great", 9.5));
+        addReview(new Review(null, 5L, "Good", 8.0));
+        addReview(new Review(null, 5L, "No rating", null));
+
+        ReviewSummary summary = getReviewSummary(5L);
+        assertEquals(3, summary.getCount());
+        assertEquals(23.5, summary.getSum());
+        assertEquals(6.0, summary.getMin());
+        assertEquals(9.5, summary.getMax());
+        assertEquals(1L, summary.getHistogram().get("9"));
+
+        webTestClient
+                .put()
+                .uri(REVIEWS_URL+"/{id}", high.getReviewId())
+                .bodyValue(new Review(null, 5L, "Just good", 7.0))
+                .exchange()
+                .expectStatus().isOk();
+        webTestClient
+                .delete()
+                .uri(REVIEWS_URL+"/{id}", low.getReviewId())
+                .exchange()
+                .expectStatus().isNoContent();
+
+        // both extremes went away, so min and max are re-derived from the remaining 7.0 and 8.0
+        summary = getReviewSummary(5L);
+        assertEquals(2, summary.getCount());
+        assertEquals(15.0, summary.getSum());
+        assertEquals(7.5, summary.getAverage());
+        assertEquals(7.0, summary.getMin());
+        assertEquals(8.0, summary.getMax());
+        assertEquals(0L, summary.getHistogram().get("9"));
+        assertEquals(0L, summary.getHistogram().get("6"));
+    }
+
+    @Test
+    void updateReview_concurrentWritersAreNotLost() {
+        Review review = addReview(new Review(null, 6L, "Fine", 5.0));
+        int writers = 20;
+
+        List<HttpStatus> statuses = Flux.range(0, writers)
+                .flatMap(i -> put(review.getReviewId(), new Review(null, 6L, "Rewrite " + i, (double) (i % 10))), writers)
+                .collectList()
+                .block();
+
+        assertEquals(writers, statuses.stream().filter(HttpStatus.OK::equals).count());
+        Review stored = reviewReactiveRepository.findById(review.getReviewId()).block();
+        assertNotNull(stored);
+        assertEquals((long) writers, stored.getVersion());
+
+        // each update took back exactly the rating it replaced, so the summary ends on the stored one
+        ReviewSummary summary = getReviewSummary(6L);
+        assertEquals(1, summary.getCount());
+        assertEquals(stored.getRating(), summary.getSum());
+    }
+
+    @Test
+    void updateReview_staleVersionIsRejected() {
+        Review review = addReview(new Review(null, 6L, "Fine", 5.0));
+        int writers = 20;
+
+        List<HttpStatus> statuses = Flux.range(0, writers)
+                .flatMap(i -> put(review.getReviewId(), new Review(null, 6L, "Rewrite " + i, 7.0, review.getVersion())), writers)
+                .collectList()
+                .block();
+
+        assertEquals(1, statuses.stream().filter(HttpStatus.OK::equals).count());
+        assertEquals(writers - 1, statuses.stream().filter(HttpStatus.CONFLICT::equals).count());
+        assertEquals(review.getVersion() + 1, reviewReactiveRepository.findById(review.getReviewId()).block().getVersion());
+        assertEquals(7.0, getReviewSummary(6L).getSum());
+    }
+
+    @Test
+    void getReviewSummary_noReviews() {
+        ReviewSummary summary = getReviewSummary(42L);
+        assertEquals(0, summary.getCount());
+        assertNull(summary.getAverage());
+    }
+
+    private Mono<HttpStatus> put(String reviewId, Review review) {
+        return WebClient.create("http://localhost:" + port)
+                .put()
+                .uri(REVIEWS_URL+"/{id}", reviewId)
+                .bodyValue(review)
+                .exchangeToMono(response -> response.releaseBody().thenReturn(response.statusCode()));
+    }
+
+    private Review addReview(Review review) {
+        return webTestClient
+                .post()
+                .uri(REVIEWS_URL)
+                .bodyValue(review)
+                .exchange()
+                .expectStatus().isCreated()
+                .expectBody(Review.class)
+                .returnResult()
+                .getResponseBody();
+    }
+
+    private ReviewSummary getReviewSummary(Long movieInfoId) {
+        return webTestClient
+                .get()
+                .uri(REVIEWS_URL+"/summary?movieInfoId={id}", movieInfoId)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(ReviewSummary.class)
+                .returnResult()
+                .getResponseBody();
+    }
+}
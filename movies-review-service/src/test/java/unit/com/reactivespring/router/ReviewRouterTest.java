@@ -1,36 +1,72 @@
 package com.reactivespring.router;
 
+import com.reactivespring.domain.BulkResult;
 import com.reactivespring.domain.Review;
+import com.reactivespring.domain.ReviewEvent;
+import com.reactivespring.domain.ReviewEventType;
+import com.reactivespring.domain.ReviewSummary;
 import com.reactivespring.exceptionhandler.GlobalErrorHandler;
 import com.reactivespring.handler.ReviewHandler;
 import com.reactivespring.repository.ReviewReactiveRepository;
+import com.reactivespring.service.ReviewBulkService;
+import com.reactivespring.service.ReviewSummaryService;
+import com.reactivespring.stream.ReviewChangeStream;
+import com.reactivespring.stream.StreamSubscriberPolicy;
+import com.reactivespring.tracing.SignalTracer;
+import com.reactivespring.util.EntityTags;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 //import com.reactivespring.validator.ReviewValidator;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
 import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.web.reactive.server.WebTestClient;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.*;
 
 @WebFluxTest
-@ContextConfiguration(classes = {ReviewRouter.class, ReviewHandler.class, GlobalErrorHandler.class})
+@ContextConfiguration(classes = {ReviewRouter.class, ReviewHandler.class, GlobalErrorHandler.class,
+        StreamSubscriberPolicy.class, SignalTracer.class, SimpleMeterRegistry.class, EntityTags.class, ReviewBulkService.class})
 @AutoConfigureWebTestClient
 public class ReviewRouterTest {
     private static final String REVIEWS_URL = "/v1/reviews";
+    private static final MediaType SMILE = MediaType.parseMediaType("application/x-jackson-smile");
 
     @MockBean
     private ReviewReactiveRepository reviewReactiveRepository;
 
+    @MockBean
+    private ReviewChangeStream reviewChangeStream;
+
+    @MockBean
+    private ReactiveMongoTemplate reactiveMongoTemplate;
+
+    @MockBean
+    private ReviewSummaryService reviewSummaryService;
+
 //    @MockBean
 //    private ReviewValidator reviewValidator;
 
@@ -44,7 +80,7 @@ public class ReviewRouterTest {
                 new Review(null, 1L, "Awesome Movie1", 9.0),
                 new Review(null, 2L, "Excellent Movie", 8.0));
 
-        when(reviewReactiveRepository.findAll()).thenReturn(Flux.fromIterable(reviewList));
+        when(reviewReactiveRepository.findAllBy(any(Pageable.class))).thenReturn(Flux.fromIterable(reviewList));
 //        doCallRealMethod().when(reviewValidator).validate(any(), any());
 
         webTestClient
@@ -59,11 +95,143 @@ public class ReviewRouterTest {
                 });
     }
 
+    @Test
+    void getAllReviews_paginated() {
+        List<Review> reviewList = Arrays.asList(
+                new Review("a", 1L, "Awesome Movie", 9.0),
+                new Review("b", 1L, "Awesome Movie1", 9.0),
+                new Review("c", 2L, "Excellent Movie", 8.0));
+
+        // one more than the page size is fetched to detect a next page
+        when(reviewReactiveRepository.findAfterStringId("0", PageRequest.of(0, 3, Sort.by("reviewId"))))
+                .thenReturn(Flux.fromIterable(reviewList));
+
+        webTestClient
+                .get()
+                .uri(REVIEWS_URL + "?limit=2&after=0")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectHeader()
+                .value(HttpHeaders.LINK, link -> assertTrue(link.endsWith(REVIEWS_URL + "?limit=2&after=b>; rel=\"next\""), link))
+                .expectBodyList(Review.class)
+                .value(reviews -> {
+                    assertEquals(2, reviews.size());
+                    assertEquals("b", reviews.get(1).getReviewId());
+                });
+    }
+
+    @Test
+    void getAllReviews_invalidLimit() {
+        webTestClient
+                .get()
+                .uri(REVIEWS_URL + "?limit=ten")
+                .exchange()
+                .expectStatus()
+                .isBadRequest()
+                .expectBody(String.class)
+                .isEqualTo("review.limit: must be a number");
+    }
+
+    @Test
+    void getReviewsByMovieInfoId_smile() {
+        when(reviewReactiveRepository.findReviewsByMovieInfoId(1L)).thenReturn(Flux.just(
+                new Review("abc", 1L, "Awesome Movie", 9.0),
+                new Review("def", 1L, "Excellent Movie", 8.0)));
+
+        webTestClient
+                .get()
+                .uri(REVIEWS_URL+"?movieInfoId=1")
+                .accept(SMILE)
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectHeader()
+                .contentType(SMILE)
+                .expectBodyList(Review.class)
+                .value(reviews -> {
+                    assertEquals(2, reviews.size());
+                    assertEquals("def", reviews.get(1).getReviewId());
+                });
+    }
+
+    @Test
+    void getReviewsByMovieInfoId_fields() {
+        when(reactiveMongoTemplate.find(any(Query.class), eq(Review.class)))
+                .thenReturn(Flux.just(new Review("1", null, null, 9.0)));
+
+        webTestClient
+                .get()
+                .uri(REVIEWS_URL + "?movieInfoId=1&fields=rating")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBody()
+                .jsonPath("$[0].reviewId").isEqualTo("1")
+                .jsonPath("$[0].rating").isEqualTo(9.0)
+                .jsonPath("$[0].comment").doesNotExist();
+
+        verify(reactiveMongoTemplate).find(argThat((Query query) -> query.getFieldsObject().containsKey("rating")
+                && query.getFieldsObject().size() == 1), eq(Review.class));
+        verifyNoInteractions(reviewReactiveRepository);
+    }
+
+    @Test
+    void getReviews_unknownField() {
+        webTestClient
+                .get()
+                .uri(REVIEWS_URL + "?movieInfoId=1&fields=author")
+                .exchange()
+                .expectStatus()
+                .isBadRequest()
+                .expectBody(String.class)
+                .isEqualTo("review.fields: unknown field author");
+    }
+
+    @Test
+    void getReviewsByMovieInfoIds() {
+        List<Review> reviewList = Arrays.asList(
+                new Review(null, 1L, "Awesome Movie", 9.0),
+                new Review(null, 1L, "Awesome Movie1", 9.0),
+                new Review(null, 2L, "Excellent Movie", 8.0));
+
+        when(reviewReactiveRepository.findReviewsByMovieInfoIdInOrderByMovieInfoId(Arrays.asList(1L, 2L)))
+                .thenReturn(Flux.fromIterable(reviewList));
+
+        webTestClient
+                .get()
+                .uri(uriBuilder -> uriBuilder.path(REVIEWS_URL)
+                        .queryParam("movieInfoIds", "1,2")
+                        .build())
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBodyList(Review.class)
+                .value(reviews -> {
+                    assertEquals(3, reviews.size());
+                });
+    }
+
+    @Test
+    void getReviewsByMovieInfoIdsValidation() {
+        webTestClient
+                .get()
+                .uri(uriBuilder -> uriBuilder.path(REVIEWS_URL)
+                        .queryParam("movieInfoIds", "1,abc")
+                        .build())
+                .exchange()
+                .expectStatus()
+                .isBadRequest()
+                .expectBody(String.class)
+                .isEqualTo("review.movieInfoIds: must be a comma separated list of numbers");
+    }
+
     @Test
     void addReview() {
         Review review = new Review(null, 1L, "Awesome Movie", 9.0);
 
-        when(reviewReactiveRepository.save(isA(Review.class))).thenReturn(Mono.just(new Review("abc", 1L, "Awesome Movie", 9.0)));
+        when(reviewReactiveRepository.insert(isA(Review.class))).thenReturn(Mono.just(new Review("abc", 1L, "Awesome Movie", 9.0)));
+        when(reviewSummaryService.reviewAdded(isA(Review.class))).thenReturn(Mono.empty());
 //        doCallRealMethod().when(reviewValidator).validate(any(), any());
 
         webTestClient
@@ -82,6 +250,41 @@ public class ReviewRouterTest {
 
                 });
 
+        verify(reviewSummaryService).reviewAdded(isA(Review.class));
+    }
+
+    @Test
+    void addReview_echoedVersionIsDropped() {
+        Review review = new Review(null, 1L, "Awesome Movie", 9.0, 3L);
+
+        when(reviewReactiveRepository.insert(isA(Review.class))).thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+        when(reviewSummaryService.reviewAdded(isA(Review.class))).thenReturn(Mono.empty());
+
+        webTestClient
+                .post()
+                .uri(REVIEWS_URL)
+                .bodyValue(review)
+                .exchange()
+                .expectStatus().isCreated();
+
+        verify(reviewReactiveRepository).insert(argThat((Review inserted) -> inserted.getVersion() == null));
+        verify(reviewReactiveRepository, never()).save(isA(Review.class));
+    }
+
+    @Test
+    void addReview_existingId() {
+        Review review = new Review("abc", 1L, "Awesome Movie", 9.0);
+
+        when(reviewReactiveRepository.insert(isA(Review.class))).thenReturn(Mono.error(new DuplicateKeyException("E11000 duplicate key")));
+
+        webTestClient
+                .post()
+                .uri(REVIEWS_URL)
+                .bodyValue(review)
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.CONFLICT);
+
+        verify(reviewSummaryService, never()).reviewAdded(isA(Review.class));
     }
 
     @Test
@@ -99,12 +302,43 @@ public class ReviewRouterTest {
                 .isEqualTo("review.movieInfoId: must not be null,review.rating: please pass a non-negative value");
     }
 
+    @Test
+    void addReviews_invalidLinesNeverReachMongo() {
+        String body = "{\"movieInfoId\": null, \"comment\": \"Awesome Movie\", \"rating\": 9.0}\n"
+                + "{\"movieInfoId\": 1, \"comment\": \"Awesome Movie\", \"rating\": -9.0}\n"
+                + "{\"movieInfoId\": 1, \"comment\": \"Awesome Movie\",\n";
+
+        webTestClient
+                .post()
+                .uri(REVIEWS_URL+"/bulk")
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .bodyValue(body)
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBodyList(BulkResult.class)
+                .value(results -> {
+                    assertEquals(3, results.size());
+                    assertEquals(0L, results.get(0).getIndex());
+                    assertEquals(BulkResult.Status.INVALID, results.get(0).getStatus());
+                    assertEquals("review.movieInfoId: must not be null", results.get(0).getError());
+                    assertEquals(1L, results.get(1).getIndex());
+                    assertEquals("review.rating: please pass a non-negative value", results.get(1).getError());
+                    assertEquals(2L, results.get(2).getIndex());
+                    assertEquals(BulkResult.Status.INVALID, results.get(2).getStatus());
+                    assertTrue(results.get(2).getError().startsWith("review: malformed line"));
+                });
+
+        verify(reactiveMongoTemplate, never()).getCollection(anyString());
+    }
+
     @Test
     void updateReview() {
         Review reviewUpdate = new Review(null, 1L, "Not an Awesome Movie", 8.0);
 
-        when(reviewReactiveRepository.save(isA(Review.class))).thenReturn(Mono.just(new Review("abc", 1L, "Not an Awesome Movie", 8.0)));
-        when(reviewReactiveRepository.findById((String) any())).thenReturn(Mono.just(new Review("abc", 1L, "Awesome Movie", 9.0)));
+        when(reactiveMongoTemplate.findAndModify(isA(Query.class), isA(Update.class), eq(Review.class)))
+                .thenReturn(Mono.just(new Review("abc", 1L, "Awesome Movie", 9.0, 0L)));
+        when(reviewSummaryService.reviewUpdated(1L, 9.0, 8.0)).thenReturn(Mono.empty());
 //        doCallRealMethod().when(reviewValidator).validate(any(), any());
 
         webTestClient
@@ -120,14 +354,35 @@ public class ReviewRouterTest {
                     assertNotNull(updatedReview);
                     assertEquals(8.0,updatedReview.getRating());
                     assertEquals("Not an Awesome Movie", updatedReview.getComment());
+                    assertEquals(1L, updatedReview.getVersion());
                 });
+
+        verify(reviewSummaryService).reviewUpdated(1L, 9.0, 8.0);
+        verify(reviewReactiveRepository, never()).findById((String) any());
+    }
+
+    @Test
+    void updateReview_staleVersion() {
+        Review reviewUpdate = new Review(null, 1L, "Not an Awesome Movie", 8.0, 0L);
+
+        when(reactiveMongoTemplate.findAndModify(isA(Query.class), isA(Update.class), eq(Review.class))).thenReturn(Mono.empty());
+        when(reviewReactiveRepository.existsById("abc")).thenReturn(Mono.just(true));
+
+        webTestClient
+                .put()
+                .uri(REVIEWS_URL+"/{id}", "abc")
+                .bodyValue(reviewUpdate)
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.CONFLICT);
+
+        verify(reviewSummaryService, never()).reviewUpdated(any(), any(), any());
     }
 
     @Test
     void deleteReview() {
         String reviewId= "abc";
-        when(reviewReactiveRepository.findById((String) any())).thenReturn(Mono.just(new Review("abc", 1L, "Awesome Movie", 9.0)));
-        when(reviewReactiveRepository.deleteById((String) any())).thenReturn(Mono.empty());
+        when(reactiveMongoTemplate.findAndRemove(isA(Query.class), eq(Review.class))).thenReturn(Mono.just(new Review("abc", 1L, "Awesome Movie", 9.0)));
+        when(reviewSummaryService.reviewRemoved(isA(Review.class))).thenReturn(Mono.empty());
 //        doCallRealMethod().when(reviewValidator).validate(any(), any());
 
         webTestClient
@@ -136,6 +391,187 @@ public class ReviewRouterTest {
                 .exchange()
                 .expectStatus()
                 .isNoContent();
+
+        verify(reviewSummaryService).reviewRemoved(isA(Review.class));
+    }
+
+    @Test
+    void getReviewSummary() {
+        Map<String, Long> histogram = new HashMap<>();
+        histogram.put("8", 1L);
+        histogram.put("9", 2L);
+        when(reviewSummaryService.getSummary(1L)).thenReturn(Mono.just(new ReviewSummary(1L, 3, 27.0, 8.0, 9.5, histogram)));
+
+        webTestClient
+                .get()
+                .uri(REVIEWS_URL+"/summary?movieInfoId=1")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBody()
+                .jsonPath("$.count").isEqualTo(3)
+                .jsonPath("$.average").isEqualTo(9.0)
+                .jsonPath("$.min").isEqualTo(8.0)
+                .jsonPath("$.max").isEqualTo(9.5)
+                .jsonPath("$.histogram.9").isEqualTo(2);
+    }
+
+    @Test
+    void getReviewSummary_notModified() {
+        when(reviewSummaryService.getSummary(1L)).thenAnswer(invocation -> Mono.just(new ReviewSummary(1L, 1, 9.0, 9.0, 9.0, new HashMap<>())));
+
+        String etag = webTestClient
+                .get()
+                .uri(REVIEWS_URL+"/summary?movieInfoId=1")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .returnResult(ReviewSummary.class)
+                .getResponseHeaders()
+                .getETag();
+        assertNotNull(etag);
+
+        webTestClient
+                .get()
+                .uri(REVIEWS_URL+"/summary?movieInfoId=1")
+                .header(HttpHeaders.IF_NONE_MATCH, etag)
+                .exchange()
+                .expectStatus()
+                .isNotModified()
+                .expectBody()
+                .isEmpty();
+
+        when(reviewSummaryService.getSummary(1L)).thenReturn(Mono.just(new ReviewSummary(1L, 2, 17.0, 8.0, 9.0, new HashMap<>())));
+
+        webTestClient
+                .get()
+                .uri(REVIEWS_URL+"/summary?movieInfoId=1")
+                .header(HttpHeaders.IF_NONE_MATCH, etag)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody()
+                .jsonPath("$.count").isEqualTo(2);
+    }
+
+    @Test
+    void getReviewSummary_etagPerRepresentation() {
+        when(reviewSummaryService.getSummary(1L)).thenAnswer(invocation -> Mono.just(new ReviewSummary(1L, 1, 9.0, 9.0, 9.0, new HashMap<>())));
+
+        String jsonTag = webTestClient
+                .get()
+                .uri(REVIEWS_URL+"/summary?movieInfoId=1")
+                .accept(MediaType.APPLICATION_JSON)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectHeader()
+                .valueEquals(HttpHeaders.VARY, HttpHeaders.ACCEPT)
+                .returnResult(ReviewSummary.class)
+                .getResponseHeaders()
+                .getETag();
+        String smileTag = webTestClient
+                .get()
+                .uri(REVIEWS_URL+"/summary?movieInfoId=1")
+                .accept(SMILE)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectHeader()
+                .contentType(SMILE)
+                .returnResult(ReviewSummary.class)
+                .getResponseHeaders()
+                .getETag();
+        assertNotNull(jsonTag);
+        assertNotEquals(jsonTag, smileTag);
+
+        // the JSON tag must not validate a cached Smile copy
+        webTestClient
+                .get()
+                .uri(REVIEWS_URL+"/summary?movieInfoId=1")
+                .accept(SMILE)
+                .header(HttpHeaders.IF_NONE_MATCH, jsonTag)
+                .exchange()
+                .expectStatus()
+                .isOk();
+    }
+
+    @Test
+    void getReviewSummary_movieInfoIdRequired() {
+        webTestClient
+                .get()
+                .uri(REVIEWS_URL+"/summary")
+                .exchange()
+                .expectStatus()
+                .isBadRequest()
+                .expectBody(String.class)
+                .isEqualTo("review.movieInfoId: must be present");
+    }
+
+    @Test
+    void rebuildReviewSummaries() {
+        when(reviewSummaryService.rebuild(1L)).thenReturn(Mono.empty());
+
+        webTestClient
+                .post()
+                .uri(REVIEWS_URL+"/summary/rebuild?movieInfoId=1")
+                .exchange()
+                .expectStatus()
+                .isNoContent();
+
+        verify(reviewSummaryService).rebuild(1L);
+    }
+
+    @Test
+    void rebuildReviewSummaries_allMovies() {
+        when(reviewSummaryService.rebuild(null)).thenReturn(Mono.empty());
+
+        webTestClient
+                .post()
+                .uri(REVIEWS_URL+"/summary/rebuild")
+                .exchange()
+                .expectStatus()
+                .isNoContent();
+
+        verify(reviewSummaryService).rebuild(null);
+    }
+
+    @Test
+    void getReviewsAsStream() {
+        when(reviewChangeStream.events(null)).thenReturn(Flux.just(
+                new ReviewEvent("token1", ReviewEventType.SAVED, "abc", new Review("abc", 1L, "Awesome Movie", 9.0)),
+                new ReviewEvent("token2", ReviewEventType.DELETED, "abc", null)));
+
+        webTestClient
+                .get()
+                .uri(REVIEWS_URL+"/stream")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBodyList(Review.class)
+                .value(reviews -> {
+                    assertEquals(1, reviews.size());
+                    assertEquals("abc", reviews.get(0).getReviewId());
+                });
     }
 
-}
\ No newline at end of file
+    @Test
+    void getReviewEvents() {
+        when(reviewChangeStream.events("token1")).thenReturn(Flux.just(
+                new ReviewEvent("token2", ReviewEventType.DELETED, "abc", null)));
+
+        webTestClient
+                .get()
+                .uri(REVIEWS_URL+"/events")
+                .header("Last-Event-ID", "token1")
+                .exchange()
+                .expectStatus()
+                .is2xxSuccessful()
+                .expectBodyList(ReviewEvent.class)
+                .value(events -> {
+                    assertEquals(1, events.size());
+                    assertEquals(ReviewEventType.DELETED, events.get(0).getType());
+                    assertEquals("abc", events.get(0).getReviewId());
+                });
+    }
+}
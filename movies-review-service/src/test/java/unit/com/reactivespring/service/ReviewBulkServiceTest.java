@@ -0,0 +1,102 @@
+package com.reactivespring.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.MongoTimeoutException;
+import com.mongodb.client.model.InsertManyOptions;
+import com.mongodb.reactivestreams.client.FindPublisher;
+import com.mongodb.reactivestreams.client.MongoCollection;
+import com.reactivespring.domain.BulkResult;
+import com.reactivespring.domain.Review;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.reactivestreams.Subscriber;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import javax.validation.Validation;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class ReviewBulkServiceTest {
+
+    private ReactiveMongoTemplate reactiveMongoTemplateMock;
+    private MongoCollection<Document> collectionMock;
+    private ReviewSummaryService reviewSummaryServiceMock;
+    private ReviewBulkService reviewBulkService;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        reactiveMongoTemplateMock = mock(ReactiveMongoTemplate.class);
+        collectionMock = mock(MongoCollection.class);
+        reviewSummaryServiceMock = mock(ReviewSummaryService.class);
+        when(reactiveMongoTemplateMock.getCollectionName(Review.class)).thenReturn("review");
+        when(reactiveMongoTemplateMock.getCollection(anyString())).thenReturn(Mono.just(collectionMock));
+        when(reactiveMongoTemplateMock.getConverter())
+                .thenReturn(new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, new MongoMappingContext()));
+        when(reviewSummaryServiceMock.reviewsAdded(anyList())).thenReturn(Mono.empty());
+
+        reviewBulkService = new ReviewBulkService(reactiveMongoTemplateMock, reviewSummaryServiceMock,
+                Validation.buildDefaultValidatorFactory().getValidator(), new ObjectMapper());
+        ReflectionTestUtils.setField(reviewBulkService, "batchSize", 500);
+        ReflectionTestUtils.setField(reviewBulkService, "concurrency", 2);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void addReviews_failedBatchReportsOnlyWhatWasNotWritten() {
+        // the driver assigns the ids, writes the first document and then times out
+        when(collectionMock.insertMany(anyList(), any(InsertManyOptions.class))).thenAnswer(invocation -> {
+            List<Document> documents = invocation.getArgument(0);
+            documents.forEach(document -> document.putIfAbsent("_id", new ObjectId()));
+            return Mono.error(new MongoTimeoutException("Timed out"));
+        });
+        FindPublisher<Document> findPublisherMock = mock(FindPublisher.class);
+        when(collectionMock.find(any(Bson.class))).thenReturn(findPublisherMock);
+        when(findPublisherMock.projection(any(Bson.class))).thenReturn(findPublisherMock);
+        ArgumentCaptor<List<Document>> inserted = ArgumentCaptor.forClass(List.class);
+        doAnswer(invocation -> {
+            verify(collectionMock).insertMany(inserted.capture(), any(InsertManyOptions.class));
+            Flux.just(new Document("_id", inserted.getValue().get(0).get("_id")))
+                    .subscribe((Subscriber<Document>) invocation.getArgument(0));
+            return null;
+        }).when(findPublisherMock).subscribe(any());
+
+        Flux<String> lines = Flux.just(
+                "{\"movieInfoId\": 1, \"comment\": \"Awesome Movie\", \"rating\": 9.0}",
+                "",
+                "{\"movieInfoId\": 2, \"comment\": \"Excellent Movie\", \"rating\": 8.0}");
+
+        StepVerifier.create(reviewBulkService.addReviews(lines))
+                .assertNext(result -> {
+                    assertEquals(0L, result.getIndex());
+                    assertEquals(BulkResult.Status.CREATED, result.getStatus());
+                })
+                .assertNext(result -> {
+                    // the blank line still counts, so the index matches the line in the request body
+                    assertEquals(2L, result.getIndex());
+                    assertEquals(BulkResult.Status.FAILED, result.getStatus());
+                })
+                .verifyComplete();
+
+        ArgumentCaptor<List<Review>> added = ArgumentCaptor.forClass(List.class);
+        verify(reviewSummaryServiceMock).reviewsAdded(added.capture());
+        assertEquals(1, added.getValue().size());
+        assertEquals(1L, added.getValue().get(0).getMovieInfoId());
+    }
+}
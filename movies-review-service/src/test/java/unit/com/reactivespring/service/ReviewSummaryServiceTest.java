@@ -0,0 +1,140 @@
+package com.reactivespring.service;
+
+import com.mongodb.client.result.DeleteResult;
+import com.mongodb.client.result.UpdateResult;
+import com.mongodb.reactivestreams.client.AggregatePublisher;
+import com.mongodb.reactivestreams.client.MongoCollection;
+import com.reactivespring.domain.Review;
+import com.reactivespring.domain.ReviewSummary;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isA;
+import static org.mockito.Mockito.*;
+
+class ReviewSummaryServiceTest {
+
+    private ReactiveMongoTemplate reactiveMongoTemplateMock;
+    private MongoCollection<Document> collectionMock;
+    private AggregatePublisher<Document> aggregatePublisherMock;
+    private ReviewSummaryService reviewSummaryService;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        reactiveMongoTemplateMock = mock(ReactiveMongoTemplate.class);
+        collectionMock = mock(MongoCollection.class);
+        aggregatePublisherMock = mock(AggregatePublisher.class);
+        when(reactiveMongoTemplateMock.getCollectionName(Review.class)).thenReturn("review");
+        when(reactiveMongoTemplateMock.getCollectionName(ReviewSummary.class)).thenReturn("reviewSummary");
+        when(reactiveMongoTemplateMock.getCollection("review")).thenReturn(Mono.just(collectionMock));
+        when(collectionMock.aggregate(anyList())).thenReturn(aggregatePublisherMock);
+        when(aggregatePublisherMock.toCollection()).thenReturn(Mono.empty());
+        reviewSummaryService = new ReviewSummaryService(reactiveMongoTemplateMock);
+    }
+
+    @Test
+    void reviewRemoved_recomputeStartsOverWhenSummaryMoved() {
+        // removing the 9.0 takes away the max, so min and max are recomputed from the reviews
+        when(reactiveMongoTemplateMock.findAndModify(isA(Query.class), isA(UpdateDefinition.class), isA(FindAndModifyOptions.class), eq(ReviewSummary.class)))
+                .thenReturn(Mono.just(summary(6.0, 9.0, 3)));
+        when(reactiveMongoTemplateMock.aggregate(isA(Aggregation.class), eq(Review.class), eq(Document.class)))
+                .thenReturn(Flux.just(new Document("min", 6.0).append("max", 8.0)));
+        // another write got in after revision 3, so the first conditional update matches nothing
+        when(reactiveMongoTemplateMock.updateFirst(isA(Query.class), isA(UpdateDefinition.class), eq(ReviewSummary.class)))
+                .thenReturn(Mono.just(UpdateResult.acknowledged(0, 0L, null)))
+                .thenReturn(Mono.just(UpdateResult.acknowledged(1, 1L, null)));
+        when(reactiveMongoTemplateMock.findById(1L, ReviewSummary.class)).thenReturn(Mono.just(summary(5.0, 9.0, 4)));
+
+        StepVerifier.create(reviewSummaryService.reviewRemoved(new Review("abc", 1L, "Great", 9.0)))
+                .verifyComplete();
+
+        ArgumentCaptor<Query> queries = ArgumentCaptor.forClass(Query.class);
+        verify(reactiveMongoTemplateMock, times(2)).updateFirst(queries.capture(), isA(UpdateDefinition.class), eq(ReviewSummary.class));
+        List<Query> conditions = queries.getAllValues();
+        assertEquals(3L, conditions.get(0).getQueryObject().get("revision"));
+        assertEquals(4L, conditions.get(1).getQueryObject().get("revision"));
+        verify(reactiveMongoTemplateMock, times(2)).aggregate(isA(Aggregation.class), eq(Review.class), eq(Document.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void rebuild_groupsReviewsAndMergesIntoSummaries() {
+        when(reactiveMongoTemplateMock.findDistinct(isA(Query.class), eq("movieInfoId"), eq(Review.class), eq(Long.class)))
+                .thenReturn(Flux.just(1L, 2L));
+        when(reactiveMongoTemplateMock.remove(isA(Query.class), eq(ReviewSummary.class)))
+                .thenReturn(Mono.just(DeleteResult.acknowledged(1)));
+
+        StepVerifier.create(reviewSummaryService.rebuild())
+                .verifyComplete();
+
+        ArgumentCaptor<List<Document>> pipeline = ArgumentCaptor.forClass(List.class);
+        verify(collectionMock).aggregate(pipeline.capture());
+        List<Document> stages = pipeline.getValue();
+        assertEquals("$_id.movieInfoId", stages.get(2).get("$group", Document.class).get("_id"));
+        Document merge = stages.get(stages.size() - 1).get("$merge", Document.class);
+        assertEquals("reviewSummary", merge.get("into"));
+        assertEquals("_id", merge.get("on"));
+        verify(aggregatePublisherMock).toCollection();
+
+        // summaries of movies without rated reviews are removed
+        ArgumentCaptor<Query> removed = ArgumentCaptor.forClass(Query.class);
+        verify(reactiveMongoTemplateMock).remove(removed.capture(), eq(ReviewSummary.class));
+        assertEquals(new Document("$nin", Arrays.asList(1L, 2L)), removed.getValue().getQueryObject().get("movieInfoId"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void reviewAdded_failedUpdateRebuildsTheSummary() {
+        when(reactiveMongoTemplateMock.findAndModify(isA(Query.class), isA(UpdateDefinition.class), isA(FindAndModifyOptions.class), eq(ReviewSummary.class)))
+                .thenReturn(Mono.error(new RuntimeException("mongo down")));
+        when(reactiveMongoTemplateMock.findDistinct(isA(Query.class), eq("movieInfoId"), eq(Review.class), eq(Long.class)))
+                .thenReturn(Flux.just(1L));
+
+        StepVerifier.create(reviewSummaryService.reviewAdded(new Review("abc", 1L, "Great", 9.0)))
+                .verifyComplete();
+
+        ArgumentCaptor<List<Document>> pipeline = ArgumentCaptor.forClass(List.class);
+        verify(collectionMock).aggregate(pipeline.capture());
+        assertEquals(1L, pipeline.getValue().get(0).get("$match", Document.class).get("movieInfoId"));
+        verify(reactiveMongoTemplateMock, never()).remove(any(Query.class), eq(ReviewSummary.class));
+    }
+
+    @Test
+    void reviewAdded_failureIsPassedOnWhenRebuildFails() {
+        when(reactiveMongoTemplateMock.findAndModify(isA(Query.class), isA(UpdateDefinition.class), isA(FindAndModifyOptions.class), eq(ReviewSummary.class)))
+                .thenReturn(Mono.error(new RuntimeException("mongo down")));
+        when(aggregatePublisherMock.toCollection()).thenReturn(Mono.error(new RuntimeException("still down")));
+
+        StepVerifier.create(reviewSummaryService.reviewAdded(new Review("abc", 1L, "Great", 9.0)))
+                .expectErrorSatisfies(ex -> {
+                    assertEquals("mongo down", ex.getMessage());
+                    assertEquals("still down", ex.getSuppressed()[0].getMessage());
+                })
+                .verify();
+
+        verify(reactiveMongoTemplateMock, never()).updateFirst(any(Query.class), any(UpdateDefinition.class), eq(ReviewSummary.class));
+    }
+
+    private ReviewSummary summary(double min, double max, long revision) {
+        return new ReviewSummary(1L, 2, min + max, min, max, new HashMap<>(), revision);
+    }
+}
@@ -0,0 +1,163 @@
+package com.reactivespring.stream;
+
+import com.mongodb.MongoException;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.OperationType;
+import com.reactivespring.domain.Review;
+import com.reactivespring.domain.ReviewEventType;
+import org.bson.BsonDocument;
+import org.bson.BsonObjectId;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.ChangeStreamEvent;
+import org.springframework.data.mongodb.core.ChangeStreamOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class ReviewChangeStreamTest {
+
+    private ReactiveMongoTemplate reactiveMongoTemplateMock;
+    private MappingMongoConverter converter;
+
+    @BeforeEach
+    void setUp() {
+        reactiveMongoTemplateMock = mock(ReactiveMongoTemplate.class);
+        when(reactiveMongoTemplateMock.getCollectionName(Review.class)).thenReturn("review");
+        converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, new MongoMappingContext());
+        converter.afterPropertiesSet();
+    }
+
+    @Test
+    void events_mapsSavesAndDeletes() {
+        ObjectId deletedId = new ObjectId();
+        Document fullDocument = new Document("_id", "abc").append("movieInfoId", 1L).append("comment", "Great").append("rating", 9.0);
+        when(reactiveMongoTemplateMock.changeStream(eq("review"), any(ChangeStreamOptions.class), eq(Review.class)))
+                .thenReturn(Flux.just(
+                        event(OperationType.INSERT, "t1", new BsonString("abc"), fullDocument),
+                        event(OperationType.DROP, "t2", null, null),
+                        event(OperationType.DELETE, "t3", new BsonObjectId(deletedId), null)));
+
+        StepVerifier.create(new ReviewChangeStream(reactiveMongoTemplateMock).events(null))
+                .assertNext(event -> {
+                    assertEquals("t1", event.getEventId());
+                    assertEquals(ReviewEventType.SAVED, event.getType());
+                    assertEquals("abc", event.getReviewId());
+                    assertEquals("Great", event.getReview().getComment());
+                })
+                .assertNext(event -> {
+                    assertEquals("t3", event.getEventId());
+                    assertEquals(ReviewEventType.DELETED, event.getType());
+                    assertEquals(deletedId.toHexString(), event.getReviewId());
+                    assertNull(event.getReview());
+                })
+                .thenCancel()
+                .verify(Duration.ofSeconds(5));
+    }
+
+    @Test
+    void events_failedSharedStreamResumesAfterLastToken() {
+        when(reactiveMongoTemplateMock.changeStream(eq("review"), any(ChangeStreamOptions.class), eq(Review.class)))
+                .thenReturn(Flux.just(insert("t1")).concatWith(Flux.error(new MongoException(6, "HostUnreachable"))))
+                .thenReturn(Flux.just(insert("t2")).concatWith(Flux.never()));
+
+        StepVerifier.withVirtualTime(() -> new ReviewChangeStream(reactiveMongoTemplateMock).events(null))
+                .assertNext(event -> assertEquals("t1", event.getEventId()))
+                .thenAwait(Duration.ofSeconds(2))
+                .assertNext(event -> assertEquals("t2", event.getEventId()))
+                .thenCancel()
+                .verify(Duration.ofSeconds(5));
+
+        List<ChangeStreamOptions> options = watchedOptions(2);
+        assertFalse(options.get(0).getResumeToken().isPresent());
+        assertEquals(Optional.of(token("t1")), options.get(1).getResumeToken());
+        assertTrue(options.get(1).isResumeAfter());
+    }
+
+    @Test
+    void events_lostHistoryReopensSharedStreamFromNow() {
+        when(reactiveMongoTemplateMock.changeStream(eq("review"), any(ChangeStreamOptions.class), eq(Review.class)))
+                .thenReturn(Flux.just(insert("t1")).concatWith(Flux.error(new MongoException(286, "ChangeStreamHistoryLost"))))
+                .thenReturn(Flux.just(insert("t2")).concatWith(Flux.never()));
+
+        StepVerifier.withVirtualTime(() -> new ReviewChangeStream(reactiveMongoTemplateMock).events(null))
+                .assertNext(event -> assertEquals("t1", event.getEventId()))
+                .thenAwait(Duration.ofSeconds(2))
+                .assertNext(event -> assertEquals("t2", event.getEventId()))
+                .thenCancel()
+                .verify(Duration.ofSeconds(5));
+
+        assertFalse(watchedOptions(2).get(1).getResumeToken().isPresent());
+    }
+
+    @Test
+    void events_invalidateReopensSharedStreamFromNow() {
+        when(reactiveMongoTemplateMock.changeStream(eq("review"), any(ChangeStreamOptions.class), eq(Review.class)))
+                .thenReturn(Flux.just(insert("t1"), event(OperationType.INVALIDATE, "t2", null, null)))
+                .thenReturn(Flux.just(insert("t3")).concatWith(Flux.never()));
+
+        StepVerifier.withVirtualTime(() -> new ReviewChangeStream(reactiveMongoTemplateMock).events(null))
+                .assertNext(event -> assertEquals("t1", event.getEventId()))
+                .thenAwait(Duration.ofSeconds(2))
+                .assertNext(event -> assertEquals("t3", event.getEventId()))
+                .thenCancel()
+                .verify(Duration.ofSeconds(5));
+
+        assertFalse(watchedOptions(2).get(1).getResumeToken().isPresent());
+    }
+
+    @Test
+    void events_resumeWithLostHistoryFailsWithGone() {
+        when(reactiveMongoTemplateMock.changeStream(eq("review"), any(ChangeStreamOptions.class), eq(Review.class)))
+                .thenReturn(Flux.error(new MongoException(286, "ChangeStreamHistoryLost")));
+
+        StepVerifier.create(new ReviewChangeStream(reactiveMongoTemplateMock).events("t0"))
+                .expectErrorSatisfies(ex -> assertEquals(HttpStatus.GONE, ((ResponseStatusException) ex).getStatus()))
+                .verify(Duration.ofSeconds(5));
+
+        assertEquals(Optional.of(token("t0")), watchedOptions(1).get(0).getResumeToken());
+    }
+
+    private List<ChangeStreamOptions> watchedOptions(int times) {
+        ArgumentCaptor<ChangeStreamOptions> options = ArgumentCaptor.forClass(ChangeStreamOptions.class);
+        verify(reactiveMongoTemplateMock, times(times)).changeStream(eq("review"), options.capture(), eq(Review.class));
+        return options.getAllValues();
+    }
+
+    private ChangeStreamEvent<Review> insert(String token) {
+        return event(OperationType.INSERT, token, new BsonString(token),
+                new Document("_id", token).append("movieInfoId", 1L).append("comment", "Great").append("rating", 9.0));
+    }
+
+    private ChangeStreamEvent<Review> event(OperationType type, String token, BsonValue id, Document fullDocument) {
+        ChangeStreamDocument<Document> raw = new ChangeStreamDocument<>(type, token(token), null, null, fullDocument,
+                id != null ? new BsonDocument("_id", id) : null, null, null, null, null);
+        return new ChangeStreamEvent<>(raw, Review.class, converter);
+    }
+
+    private BsonDocument token(String token) {
+        return new BsonDocument("_data", new BsonString(token));
+    }
+}
@@ -0,0 +1,100 @@
+package com.reactivespring.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.reactivespring.domain.Movie;
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.Review;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// encode and decode cost of the Movie aggregate as JSON and as Smile; the payload size of each format is
+// reported next to the timings as the payloadBytes secondary metric
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@State(Scope.Benchmark)
+public class MovieWireFormatBenchmark {
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Payload {
+        public long payloadBytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            payloadBytes = 0;
+        }
+    }
+
+    @Param({"0", "10", "100", "1000"})
+    public int reviews;
+
+    private ObjectMapper jsonMapper;
+    private ObjectMapper smileMapper;
+    private Movie movie;
+    private byte[] json;
+    private byte[] smile;
+
+    @Setup
+    public void setUp() throws IOException {
+        jsonMapper = Jackson2ObjectMapperBuilder.json().build();
+        smileMapper = Jackson2ObjectMapperBuilder.smile().build();
+
+        List<Review> reviewList = new ArrayList<>();
+        for (int i = 0; i < reviews; i++) {
+            reviewList.add(new Review(String.valueOf(i), 1L, "Review number " + i + " of an awesome movie", (double) (i % 10)));
+        }
+        movie = new Movie(new MovieInfo("1", "Batman Begins", 2005,
+                Arrays.asList("Christian Bale", "Michael Cane"), LocalDate.parse("2005-06-15")), reviewList);
+
+        json = jsonMapper.writeValueAsBytes(movie);
+        smile = smileMapper.writeValueAsBytes(movie);
+    }
+
+    @Benchmark
+    public byte[] encodeJson(Payload payload) throws IOException {
+        byte[] bytes = jsonMapper.writeValueAsBytes(movie);
+        payload.payloadBytes = bytes.length;
+        return bytes;
+    }
+
+    @Benchmark
+    public byte[] encodeSmile(Payload payload) throws IOException {
+        byte[] bytes = smileMapper.writeValueAsBytes(movie);
+        payload.payloadBytes = bytes.length;
+        return bytes;
+    }
+
+    @Benchmark
+    public Movie decodeJson(Payload payload) throws IOException {
+        payload.payloadBytes = json.length;
+        return jsonMapper.readValue(json, Movie.class);
+    }
+
+    @Benchmark
+    public Movie decodeSmile(Payload payload) throws IOException {
+        payload.payloadBytes = smile.length;
+        return smileMapper.readValue(smile, Movie.class);
+    }
+}
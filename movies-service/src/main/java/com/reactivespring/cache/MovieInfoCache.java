@@ -0,0 +1,91 @@
+package com.reactivespring.cache;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.reactivespring.client.MoviesInfoRestClient;
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.exception.MoviesInfoClientException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+@Component
+public class MovieInfoCache {
+
+    final private MoviesInfoRestClient moviesInfoRestClient;
+    final private AsyncCache<String, Optional<MovieInfo>> cache;
+
+    public MovieInfoCache(MoviesInfoRestClient moviesInfoRestClient,
+                          MeterRegistry meterRegistry,
+                          @Value("${movies.cache.movie-info.max-size:10000}") long maxSize,
+                          @Value("${movies.cache.movie-info.ttl:10m}") Duration ttl,
+                          @Value("${movies.cache.movie-info.negative-ttl:1m}") Duration negativeTtl) {
+        this.moviesInfoRestClient = moviesInfoRestClient;
+
+        AsyncCache<String, Optional<MovieInfo>> asyncCache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new Expiry<String, Optional<MovieInfo>>() {
+                    @Override
+                    public long expireAfterCreate(String key, Optional<MovieInfo> value, long currentTime) {
+                        return value.isPresent() ? ttl.toNanos() : negativeTtl.toNanos();
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, Optional<MovieInfo> value, long currentTime, long currentDuration) {
+                        return expireAfterCreate(key, value, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, Optional<MovieInfo> value, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .buildAsync();
+
+        this.cache = CaffeineCacheMetrics.monitor(meterRegistry, asyncCache, "movieInfo");
+    }
+
+    public Mono<MovieInfo> retrieveMovieInfo(String movieId) {
+        return Mono.defer(() -> {
+                    CompletableFuture<Optional<MovieInfo>> future = cache.get(movieId, (id, executor) -> load(id));
+
+                    // a failed load is dropped right away so the next caller retries
+                    return Mono.fromFuture(future.thenApply(movieInfo -> movieInfo))
+                            .doOnError(ex -> cache.asMap().remove(movieId, future));
+                })
+                .flatMap(movieInfo -> movieInfo
+                        .map(Mono::just)
+                        .orElseGet(() -> Mono.error(notFound(movieId))));
+    }
+
+    public void invalidate(String movieId) {
+        cache.synchronous().invalidate(movieId);
+    }
+
+    public void invalidateAll() {
+        cache.synchronous().invalidateAll();
+    }
+
+    private CompletableFuture<Optional<MovieInfo>> load(String movieId) {
+        return moviesInfoRestClient.retrieveMovieInfo(movieId)
+                .map(Optional::of)
+                .onErrorResume(MoviesInfoClientException.class, ex -> ex.getStatusCode() == HttpStatus.NOT_FOUND.value()
+                        ? Mono.just(Optional.empty())
+                        : Mono.error(ex))
+                .toFuture();
+    }
+
+    private MoviesInfoClientException notFound(String movieId) {
+        return new MoviesInfoClientException("There is no MovieInfo available for the passed Id: " + movieId,
+                HttpStatus.NOT_FOUND.value());
+    }
+}
@@ -1,44 +1,141 @@
 package com.reactivespring.client;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieInfoEvent;
 import com.reactivespring.exception.MoviesInfoClientException;
+import com.reactivespring.config.WebClientFactory;
 import com.reactivespring.exception.MoviesInfoServerException;
-import com.reactivespring.util.RetryUtil;
+import com.reactivespring.metrics.ClientMetrics;
+import com.reactivespring.resilience.DownstreamGuard;
+import com.reactivespring.resilience.RequestHedger;
+import com.reactivespring.resilience.ResilienceFactory;
+import com.reactivespring.tracing.SignalTracer;
+import com.reactivespring.util.RetryBudget;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.List;
 
 @Component
 @Slf4j
 public class MoviesInfoRestClient {
 
+    private static final String MOVIE_FIELDS = "fields=name,year,cast";
+
     @Value("${restClient.moviesInfoUrl}")
     private String moviesInfoUrl;
 
     final private WebClient webClient;
+    final private WebClient streamingWebClient;
+    final private SignalTracer signalTracer;
+    final private ClientMetrics clientMetrics;
+    final private DownstreamGuard downstreamGuard;
+    final private RequestHedger requestHedger;
+    final private RetryBudget retryBudget;
+    final private Retry retrySpec;
+    // last ETag and body per id, kept well past the MovieInfoCache TTL so an expired entry can be revalidated
+    final private Cache<String, ValidatedMovieInfo> validatedMovieInfos;
 
-    MoviesInfoRestClient(WebClient webClient) {
-        this.webClient = webClient;
+    MoviesInfoRestClient(WebClientFactory webClientFactory, SignalTracer signalTracer, MeterRegistry meterRegistry,
+                         ResilienceFactory resilienceFactory,
+                         @Value("${movies.cache.movie-info.validator-max-size:10000}") long validatorMaxSize,
+                         @Value("${movies.cache.movie-info.validator-ttl:1h}") Duration validatorTtl) {
+        this.webClient = webClientFactory.create("movies-info");
+        this.streamingWebClient = webClientFactory.createStreaming("movies-info");
+        this.signalTracer = signalTracer;
+        this.clientMetrics = new ClientMetrics(meterRegistry, "moviesInfo");
+        this.downstreamGuard = resilienceFactory.downstreamGuard("movies-info");
+        this.requestHedger = resilienceFactory.requestHedger("movies-info");
+        this.retryBudget = resilienceFactory.retryBudget("movies-info");
+        this.retrySpec = resilienceFactory.retrySpec("movies-info", retryBudget, clientMetrics.getRetries());
+        this.validatedMovieInfos = Caffeine.newBuilder()
+                .maximumSize(validatorMaxSize)
+                .expireAfterWrite(validatorTtl)
+                .build();
     }
 
     public Mono<MovieInfo> retrieveMovieInfo(String movieId) {
-        String url = moviesInfoUrl.concat("/{id}");
+        String url = moviesInfoUrl.concat("/{id}?" + MOVIE_FIELDS);
+        return Mono.defer(() -> {
+            ValidatedMovieInfo validated = validatedMovieInfos.getIfPresent(movieId);
+            return webClient
+                    .get()
+                    .uri(url, movieId)
+                    .headers(headers -> {
+                        if (validated != null) {
+                            headers.setIfNoneMatch(validated.etag);
+                        }
+                    })
+                    .retrieve()
+                    .onStatus(HttpStatus::is4xxClientError, clientResponse -> {
+                        log.info("Status code is: {}", clientResponse.statusCode().value());
+    
+                        if (clientResponse.statusCode().equals(HttpStatus.NOT_FOUND)) {
+                            return Mono.error(
+                                    new MoviesInfoClientException("There is no MovieInfo available for the passed Id: "+ movieId,
+                                    clientResponse.statusCode().value()));
+                        }
+                        return clientResponse.bodyToMono(String.class)
+                                .flatMap(responseMessage -> Mono.error(
+                                        new MoviesInfoClientException(responseMessage, clientResponse.statusCode().value())
+                                ));
+                    })
+                    .onStatus(HttpStatus::is5xxServerError, clientResponse -> {
+                        log.info("Status code is: {}", clientResponse.statusCode().value());
+    
+                        return clientResponse.bodyToMono(String.class)
+                                .flatMap(responseMessage -> Mono.error(
+                                        new MoviesInfoServerException("Server Exception in MoviesInfoService " + responseMessage)
+                                ));
+                    })
+                    .toEntity(MovieInfo.class)
+                    .flatMap(entity -> fromEntity(movieId, entity, validated));
+        })
+                .transform(downstreamGuard::protect)
+                .transform(requestHedger::hedge)
+//                .retry(3)
+                .retryWhen(retrySpec)
+                .doOnSubscribe(subscription -> retryBudget.deposit())
+                .transform(movieInfo -> clientMetrics.timed("retrieveMovieInfo", movieInfo))
+                .transform(movieInfo -> signalTracer.trace("moviesInfo.retrieveMovieInfo", movieInfo));
+    }
+
+    private Mono<MovieInfo> fromEntity(String movieId, ResponseEntity<MovieInfo> entity, ValidatedMovieInfo validated) {
+        if (entity.getStatusCode() == HttpStatus.NOT_MODIFIED && validated != null) {
+            clientMetrics.getNotModified().increment();
+            return Mono.just(validated.movieInfo);
+        }
+        String etag = entity.getHeaders().getETag();
+        if (etag != null && entity.getBody() != null) {
+            validatedMovieInfos.put(movieId, new ValidatedMovieInfo(etag, entity.getBody()));
+        }
+        return Mono.justOrEmpty(entity.getBody());
+    }
+
+    public Flux<MovieInfo> retrieveMovieInfos(List<String> movieIds) {
+        String url = moviesInfoUrl.concat("/batch?" + MOVIE_FIELDS);
+
         return webClient
-                .get()
-                .uri(url, movieId)
+                .post()
+                .uri(url)
+                .accept(MediaType.APPLICATION_NDJSON)
+                .bodyValue(movieIds)
                 .retrieve()
                 .onStatus(HttpStatus::is4xxClientError, clientResponse -> {
                     log.info("Status code is: {}", clientResponse.statusCode().value());
 
-                    if (clientResponse.statusCode().equals(HttpStatus.NOT_FOUND)) {
-                        return Mono.error(
-                                new MoviesInfoClientException("There is no MovieInfo available for the passed Id: "+ movieId,
-                                clientResponse.statusCode().value()));
-                    }
                     return clientResponse.bodyToMono(String.class)
                             .flatMap(responseMessage -> Mono.error(
                                     new MoviesInfoClientException(responseMessage, clientResponse.statusCode().value())
@@ -52,16 +149,17 @@ public class MoviesInfoRestClient {
                                     new MoviesInfoServerException("Server Exception in MoviesInfoService " + responseMessage)
                             ));
                 })
-                .bodyToMono(MovieInfo.class)
-//                .retry(3)
-                .retryWhen(RetryUtil.retrySpec())
-                .log();
+                .bodyToFlux(MovieInfo.class)
+                .transform(downstreamGuard::protect)
+                // POST, so not retried
+                .transform(movieInfos -> clientMetrics.timed("retrieveMovieInfos", movieInfos))
+                .transform(movieInfos -> signalTracer.trace("moviesInfo.retrieveMovieInfos", movieInfos));
     }
 
     public Flux<MovieInfo> retrieveMovieInfoAsStream() {
         String url = moviesInfoUrl.concat("/stream");
 
-        return webClient
+        return streamingWebClient
                 .get()
                 .uri(url)
                 .retrieve()
@@ -82,7 +180,51 @@ public class MoviesInfoRestClient {
                             ));
                 })
                 .bodyToFlux(MovieInfo.class)
-                .retryWhen(RetryUtil.retrySpec())
-                .log();
+                .retryWhen(retrySpec)
+                .doOnSubscribe(subscription -> retryBudget.deposit())
+                .transform(movieInfos -> clientMetrics.timed("retrieveMovieInfoAsStream", movieInfos))
+                .transform(movieInfos -> signalTracer.trace("moviesInfo.retrieveMovieInfoAsStream", movieInfos));
+    }
+
+    public Flux<MovieInfoEvent> retrieveMovieInfoEvents(String lastEventId) {
+        String url = moviesInfoUrl.concat("/events");
+
+        return streamingWebClient
+                .get()
+                .uri(url)
+                .headers(headers -> {
+                    if (lastEventId != null) {
+                        headers.set("Last-Event-ID", lastEventId);
+                    }
+                })
+                .accept(MediaType.APPLICATION_NDJSON)
+                .retrieve()
+                .onStatus(HttpStatus::is4xxClientError, clientResponse -> {
+                    log.info("Status code is: {}", clientResponse.statusCode().value());
+
+                    return clientResponse.bodyToMono(String.class)
+                            .flatMap(responseMessage -> Mono.error(
+                                    new MoviesInfoClientException(responseMessage, clientResponse.statusCode().value())
+                            ));
+                })
+                .onStatus(HttpStatus::is5xxServerError, clientResponse -> {
+                    log.info("Status code is: {}", clientResponse.statusCode().value());
+
+                    return clientResponse.bodyToMono(String.class)
+                            .flatMap(responseMessage -> Mono.error(
+                                    new MoviesInfoServerException("Server Exception in MoviesInfoService " + responseMessage)
+                            ));
+                })
+                .bodyToFlux(MovieInfoEvent.class);
+    }
+
+    private static final class ValidatedMovieInfo {
+        final private String etag;
+        final private MovieInfo movieInfo;
+
+        private ValidatedMovieInfo(String etag, MovieInfo movieInfo) {
+            this.etag = etag;
+            this.movieInfo = movieInfo;
+        }
     }
 }
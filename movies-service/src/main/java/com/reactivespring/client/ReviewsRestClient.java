@@ -1,19 +1,27 @@
 package com.reactivespring.client;
 
+import com.reactivespring.config.WebClientFactory;
 import com.reactivespring.domain.Review;
 import com.reactivespring.exception.MoviesInfoClientException;
 import com.reactivespring.exception.MoviesInfoServerException;
 import com.reactivespring.exception.ReviewsClientException;
 import com.reactivespring.exception.ReviewsServerException;
-import com.reactivespring.util.RetryUtil;
+import com.reactivespring.metrics.ClientMetrics;
+import com.reactivespring.resilience.DownstreamGuard;
+import com.reactivespring.resilience.ResilienceFactory;
+import com.reactivespring.tracing.SignalTracer;
+import com.reactivespring.util.RetryBudget;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.client.WebClient;
-import org.springframework.web.util.UriComponentsBuilder;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.util.List;
 
 @Component
 @Slf4j
@@ -23,20 +31,35 @@ public class ReviewsRestClient {
     private String reviewsUrl;
 
     final private WebClient webClient;
+    final private SignalTracer signalTracer;
+    final private ClientMetrics clientMetrics;
+    final private DownstreamGuard downstreamGuard;
+    final private RetryBudget retryBudget;
+    final private Retry retrySpec;
 
-    public ReviewsRestClient(WebClient webClient) {
-        this.webClient = webClient;
+    public ReviewsRestClient(WebClientFactory webClientFactory, SignalTracer signalTracer, MeterRegistry meterRegistry,
+                             ResilienceFactory resilienceFactory) {
+        this.webClient = webClientFactory.create("reviews");
+        this.signalTracer = signalTracer;
+        this.clientMetrics = new ClientMetrics(meterRegistry, "reviews");
+        this.downstreamGuard = resilienceFactory.downstreamGuard("reviews");
+        this.retryBudget = resilienceFactory.retryBudget("reviews");
+        this.retrySpec = resilienceFactory.retrySpec("reviews", retryBudget, clientMetrics.getRetries());
     }
 
+    // ids are passed as uri variables so the http.client.requests uri tag stays a template
     public Flux<Review> retrieveReviews(String movieId) {
-        String url = UriComponentsBuilder.fromHttpUrl(reviewsUrl)
-                .queryParam("movieInfoId", movieId)
-                .buildAndExpand()
-                .toUriString();
+        return retrieveReviewsFromUrl(reviewsUrl.concat("?movieInfoId={movieInfoId}"), movieId);
+    }
+
+    public Flux<Review> retrieveReviews(List<String> movieIds) {
+        return retrieveReviewsFromUrl(reviewsUrl.concat("?movieInfoIds={movieInfoIds}"), String.join(",", movieIds));
+    }
 
+    private Flux<Review> retrieveReviewsFromUrl(String url, String movieIds) {
         return webClient
                 .get()
-                .uri(url)
+                .uri(url, movieIds)
                 .retrieve()
                 .onStatus(HttpStatus::is4xxClientError, clientResponse -> {
                     log.info("Status code is: {}", clientResponse.statusCode().value());
@@ -56,8 +79,11 @@ public class ReviewsRestClient {
                             ));
                 })
                 .bodyToFlux(Review.class)
-                .retryWhen(RetryUtil.retrySpec())
-                .log();
+                .transform(downstreamGuard::protect)
+                .retryWhen(retrySpec)
+                .doOnSubscribe(subscription -> retryBudget.deposit())
+                .transform(reviews -> clientMetrics.timed("retrieveReviews", reviews))
+                .transform(reviews -> signalTracer.trace("reviews.retrieveReviews", reviews));
     }
 
 }
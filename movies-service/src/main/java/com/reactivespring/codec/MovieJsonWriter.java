@@ -0,0 +1,60 @@
+package com.reactivespring.codec;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.reactivespring.domain.MovieStreamElement;
+import org.springframework.core.codec.EncodingException;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+
+// one buffer per element, so the reviews are never held in memory as a list
+@Component
+public class MovieJsonWriter {
+
+    private static final byte[] MOVIE_INFO_START = "{\"movieInfo\":".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] REVIEW_LIST_START = ",\"reviewList\":[".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] SEPARATOR = ",".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] END = "]}".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] EMPTY = new byte[0];
+
+    final private ObjectMapper objectMapper;
+
+    public MovieJsonWriter(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    public Flux<DataBuffer> write(Flux<MovieStreamElement> elements, DataBufferFactory bufferFactory) {
+        return Flux.defer(() -> {
+            boolean[] firstReview = {true};
+
+            return elements
+                    .map(element -> {
+                        if (element.getMovieInfo() != null) {
+                            return buffer(bufferFactory, MOVIE_INFO_START, toJson(element.getMovieInfo()), REVIEW_LIST_START);
+                        }
+                        byte[] prefix = firstReview[0] ? EMPTY : SEPARATOR;
+                        firstReview[0] = false;
+                        return buffer(bufferFactory, prefix, toJson(element.getReview()), EMPTY);
+                    })
+                    .concatWith(Mono.fromSupplier(() -> buffer(bufferFactory, EMPTY, END, EMPTY)));
+        });
+    }
+
+    private byte[] toJson(Object value) {
+        try {
+            return objectMapper.writeValueAsBytes(value);
+        } catch (JsonProcessingException e) {
+            throw new EncodingException("Could not write " + value.getClass().getSimpleName(), e);
+        }
+    }
+
+    private DataBuffer buffer(DataBufferFactory bufferFactory, byte[] prefix, byte[] json, byte[] suffix) {
+        DataBuffer buffer = bufferFactory.allocateBuffer(prefix.length + json.length + suffix.length);
+        return buffer.write(prefix).write(json).write(suffix);
+    }
+}
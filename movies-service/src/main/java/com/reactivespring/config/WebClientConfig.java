@@ -2,13 +2,14 @@ package com.reactivespring.config;
 
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
 import org.springframework.web.reactive.function.client.WebClient;
 
 @Configuration
 public class WebClientConfig {
 
     @Bean
-    public WebClient webClient(WebClient.Builder builder) {
-        return builder.build();
+    public WebClientFactory webClientFactory(WebClient.Builder builder, Environment environment) {
+        return new WebClientFactory(builder, environment);
     }
 }
@@ -0,0 +1,88 @@
+package com.reactivespring.config;
+
+import io.netty.channel.ChannelOption;
+import io.netty.handler.timeout.ReadTimeoutHandler;
+import org.springframework.core.env.Environment;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+public class WebClientFactory {
+
+    private static final String PREFIX = "movies.http-client.";
+    private static final String SMILE_ACCEPT = "application/x-jackson-smile, application/json;q=0.9";
+
+    final private WebClient.Builder builder;
+    final private Environment environment;
+    final private Map<String, ConnectionProvider> connectionProviders = new ConcurrentHashMap<>();
+
+    public WebClientFactory(WebClient.Builder builder, Environment environment) {
+        this.builder = builder;
+        this.environment = environment;
+    }
+
+    public WebClient create(String downstream) {
+        int readTimeoutMillis = (int) duration(downstream, "read-timeout", Duration.ofSeconds(5)).toMillis();
+
+        HttpClient httpClient = httpClient(downstream)
+                .responseTimeout(duration(downstream, "response-timeout", Duration.ofSeconds(5)))
+                .doOnConnected(connection -> connection.addHandlerLast(
+                        new ReadTimeoutHandler(readTimeoutMillis, TimeUnit.MILLISECONDS)));
+
+        WebClient.Builder webClientBuilder = builder(httpClient);
+        if ("smile".equalsIgnoreCase(environment.getProperty(PREFIX + downstream + ".wire-format", "json"))) {
+            webClientBuilder.defaultHeader(HttpHeaders.ACCEPT, SMILE_ACCEPT);
+        }
+        return webClientBuilder.build();
+    }
+
+    // long-lived NDJSON streams share the downstream's pool but may stay idle longer than any read timeout
+    public WebClient createStreaming(String downstream) {
+        return builder(httpClient(downstream)).build();
+    }
+
+    @PreDestroy
+    public void dispose() {
+        connectionProviders.values().forEach(ConnectionProvider::dispose);
+    }
+
+    private WebClient.Builder builder(HttpClient httpClient) {
+        return builder.clone()
+                .clientConnector(new ReactorClientHttpConnector(httpClient));
+    }
+
+    private HttpClient httpClient(String downstream) {
+        HttpClient httpClient = HttpClient.create(connectionProviders.computeIfAbsent(downstream, this::connectionProvider))
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) duration(downstream, "connect-timeout", Duration.ofSeconds(2)).toMillis());
+
+        if (environment.getProperty(PREFIX + downstream + ".h2c", Boolean.class, false)) {
+            httpClient = httpClient.protocol(HttpProtocol.H2C, HttpProtocol.HTTP11);
+        }
+        return httpClient;
+    }
+
+    private ConnectionProvider connectionProvider(String downstream) {
+        return ConnectionProvider.builder(downstream)
+                .maxConnections(environment.getProperty(PREFIX + downstream + ".max-connections", Integer.class, 100))
+                .pendingAcquireMaxCount(environment.getProperty(PREFIX + downstream + ".pending-acquire-max-count", Integer.class, 500))
+                .pendingAcquireTimeout(duration(downstream, "pending-acquire-timeout", Duration.ofSeconds(5)))
+                .maxIdleTime(duration(downstream, "max-idle-time", Duration.ofSeconds(30)))
+                .maxLifeTime(duration(downstream, "max-life-time", Duration.ofMinutes(5)))
+                .evictInBackground(duration(downstream, "evict-in-background", Duration.ofSeconds(30)))
+                .metrics(true)
+                .build();
+    }
+
+    private Duration duration(String downstream, String key, Duration defaultValue) {
+        return environment.getProperty(PREFIX + downstream + "." + key, Duration.class, defaultValue);
+    }
+}
@@ -1,35 +1,160 @@
 package com.reactivespring.controller;
 
+import com.reactivespring.cache.MovieInfoCache;
+import com.reactivespring.codec.MovieJsonWriter;
 import com.reactivespring.client.MoviesInfoRestClient;
 import com.reactivespring.client.ReviewsRestClient;
 import com.reactivespring.domain.Movie;
 import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieStreamElement;
 import com.reactivespring.domain.Review;
+import com.reactivespring.readmodel.MovieInfoReadModel;
+import com.reactivespring.util.EntityTags;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
-import org.springframework.web.bind.annotation.GetMapping;
-import org.springframework.web.bind.annotation.PathVariable;
-import org.springframework.web.bind.annotation.RequestMapping;
-import org.springframework.web.bind.annotation.RestController;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.web.bind.annotation.*;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
-import java.util.List;
+import java.time.Duration;
+import java.util.*;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/v1/movies")
 public class MoviesController {
+    private static final Pattern NUMERIC_ID = Pattern.compile("\\d+");
 
     final private MoviesInfoRestClient moviesInfoRestClient;
     final private ReviewsRestClient reviewsRestClient;
+    final private MovieInfoCache movieInfoCache;
+    final private MovieInfoReadModel movieInfoReadModel;
+    final private MovieJsonWriter movieJsonWriter;
+    final private EntityTags entityTags;
 
-    public MoviesController(MoviesInfoRestClient moviesInfoRestClient, ReviewsRestClient reviewsRestClient) {
+    @Value("${movies.aggregation.concurrent:true}")
+    private boolean concurrentAggregation;
+
+    @Value("${movies.aggregation.timeout:10s}")
+    private Duration aggregationTimeout;
+
+    @Value("${movies.batch.size:50}")
+    private int batchSize;
+
+    @Value("${movies.batch.concurrency:16}")
+    private int batchConcurrency;
+
+    public MoviesController(MoviesInfoRestClient moviesInfoRestClient, ReviewsRestClient reviewsRestClient,
+                            MovieInfoCache movieInfoCache, MovieInfoReadModel movieInfoReadModel,
+                            MovieJsonWriter movieJsonWriter, EntityTags entityTags) {
         this.moviesInfoRestClient = moviesInfoRestClient;
         this.reviewsRestClient = reviewsRestClient;
+        this.movieInfoCache = movieInfoCache;
+        this.movieInfoReadModel = movieInfoReadModel;
+        this.movieJsonWriter = movieJsonWriter;
+        this.entityTags = entityTags;
     }
 
     @GetMapping("/{id}")
-    public Mono<Movie> retrieveMovieById(@PathVariable("id") String movieId) {
-        return moviesInfoRestClient.retrieveMovieInfo(movieId)
+    public Mono<ResponseEntity<Movie>> retrieveMovieById(@PathVariable("id") String movieId, ServerHttpRequest request) {
+        Mono<Movie> movieMono = concurrentAggregation
+                ? retrieveMovieConcurrently(movieId)
+                : retrieveMovieSequentially(movieId);
+
+        return movieMono.timeout(aggregationTimeout)
+                .map(movie -> {
+                    MediaType contentType = entityTags.negotiate(request.getHeaders().getAccept());
+                    return ResponseEntity.ok()
+                            .contentType(contentType)
+                            .varyBy(HttpHeaders.ACCEPT)
+                            .eTag(entityTags.of(movie, contentType))
+                            .body(movie);
+                });
+    }
+
+    // once the MovieInfo is written the status is committed, so a later reviews failure aborts the response
+    @GetMapping(value = "/{id}", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<MovieStreamElement> streamMovieById(@PathVariable("id") String movieId) {
+        return retrieveMovieElements(movieId);
+    }
+
+    @GetMapping(value = "/{id}", params = "stream=true", produces = MediaType.APPLICATION_JSON_VALUE)
+    public Flux<DataBuffer> streamMovieByIdAsJson(@PathVariable("id") String movieId, ServerHttpResponse response) {
+        return movieJsonWriter.write(retrieveMovieElements(movieId), response.bufferFactory());
+    }
+
+    private Flux<MovieStreamElement> retrieveMovieElements(String movieId) {
+        Flux<MovieStreamElement> movieInfoElement = retrieveMovieInfo(movieId)
+                .map(MovieStreamElement::of)
+                .flux();
+        Flux<MovieStreamElement> reviewElements = reviewsRestClient
+                .retrieveReviews(movieId)
+                .map(MovieStreamElement::of);
+
+        // mergeSequential subscribes to both at once but holds back reviews (up to its prefetch) until the MovieInfo is out
+        Flux<MovieStreamElement> elements = concurrentAggregation
+                ? Flux.mergeSequential(movieInfoElement, reviewElements)
+                : Flux.concat(movieInfoElement, reviewElements);
+
+        return elements.timeout(aggregationTimeout);
+    }
+
+    @PostMapping(value = "/batch", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<Movie> retrieveMoviesByIds(@RequestBody List<String> movieIds) {
+        return Flux.fromIterable(movieIds)
+                .distinct()
+                .buffer(batchSize)
+                .flatMap(this::retrieveMoviesChunk, batchConcurrency);
+    }
+
+    private Flux<Movie> retrieveMoviesChunk(List<String> movieIds) {
+        Mono<List<MovieInfo>> movieInfosMono = moviesInfoRestClient.retrieveMovieInfos(movieIds)
+                .collectList();
+
+        // reviews are keyed by a numeric movieInfoId, so other ids cannot have any
+        List<String> reviewableIds = movieIds.stream()
+                .filter(movieId -> NUMERIC_ID.matcher(movieId).matches())
+                .collect(Collectors.toList());
+        Mono<Map<Long, Collection<Review>>> reviewsMono = reviewableIds.isEmpty()
+                ? Mono.just(Collections.emptyMap())
+                : reviewsRestClient.retrieveReviews(reviewableIds).collectMultimap(Review::getMovieInfoId);
+
+        return Mono.zip(movieInfosMono, reviewsMono)
+                .flatMapIterable(tuple -> tuple.getT1().stream()
+                        .map(movieInfo -> new Movie(movieInfo, reviewsFor(movieInfo, tuple.getT2())))
+                        .collect(Collectors.toList()));
+    }
+
+    private Mono<MovieInfo> retrieveMovieInfo(String movieId) {
+        return movieInfoReadModel.findMovieInfo(movieId)
+                .map(Mono::just)
+                .orElseGet(() -> movieInfoCache.retrieveMovieInfo(movieId));
+    }
+
+    private List<Review> reviewsFor(MovieInfo movieInfo, Map<Long, Collection<Review>> reviewsByMovieInfoId) {
+        String movieInfoId = movieInfo.getMovieInfoId();
+        if (movieInfoId == null || !NUMERIC_ID.matcher(movieInfoId).matches()) {
+            return new ArrayList<>();
+        }
+        return new ArrayList<>(reviewsByMovieInfoId.getOrDefault(Long.valueOf(movieInfoId), Collections.emptyList()));
+    }
+
+    private Mono<Movie> retrieveMovieConcurrently(String movieId) {
+        Mono<List<Review>> reviewsListMono = reviewsRestClient
+                .retrieveReviews(movieId)
+                .collectList();
+
+        return Mono.zip(retrieveMovieInfo(movieId), reviewsListMono, Movie::new);
+    }
+
+    private Mono<Movie> retrieveMovieSequentially(String movieId) {
+        return retrieveMovieInfo(movieId)
                 .flatMap(movieInfo -> {
                     Mono<List<Review>> reviewsListMono = reviewsRestClient
                             .retrieveReviews(movieId)
@@ -0,0 +1,6 @@
+package com.reactivespring.domain;
+
+public enum MovieInfoEventType {
+    SAVED,
+    DELETED
+}
@@ -0,0 +1,25 @@
+package com.reactivespring.domain;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// one line of the streamed Movie aggregate: the MovieInfo first, then one line per Review
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class MovieStreamElement {
+
+    private MovieInfo movieInfo;
+    private Review review;
+
+    public static MovieStreamElement of(MovieInfo movieInfo) {
+        return new MovieStreamElement(movieInfo, null);
+    }
+
+    public static MovieStreamElement of(Review review) {
+        return new MovieStreamElement(null, review);
+    }
+}
@@ -0,0 +1,11 @@
+package com.reactivespring.exception;
+
+public class DownstreamUnavailableException extends RuntimeException{
+    private String message;
+
+
+    public DownstreamUnavailableException(String message) {
+        super(message);
+        this.message = message;
+    }
+}
@@ -1,5 +1,6 @@
 package com.reactivespring.globalerrorhandler;
 
+import com.reactivespring.exception.DownstreamUnavailableException;
 import com.reactivespring.exception.MoviesInfoClientException;
 import com.reactivespring.exception.ReviewsClientException;
 import lombok.extern.slf4j.Slf4j;
@@ -8,6 +9,8 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 
+import java.util.concurrent.TimeoutException;
+
 @ControllerAdvice
 @Slf4j
 public class GlobalErrorHandler {
@@ -19,6 +22,20 @@ public class GlobalErrorHandler {
         return ResponseEntity.status(exception.getStatusCode()).body(exception.getMessage());
     }
 
+    @ExceptionHandler(TimeoutException.class)
+    public ResponseEntity<String> handleTimeoutException(TimeoutException exception) {
+        log.error("Exception Caught in handleTimeoutException: {}", exception.getMessage());
+
+        return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).body(exception.getMessage());
+    }
+
+    @ExceptionHandler(DownstreamUnavailableException.class)
+    public ResponseEntity<String> handleDownstreamUnavailableException(DownstreamUnavailableException exception) {
+        log.error("Exception Caught in handleDownstreamUnavailableException: {}", exception.getMessage());
+
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(exception.getMessage());
+    }
+
     @ExceptionHandler(RuntimeException.class)
     public ResponseEntity<String> handleRuntimeException(RuntimeException exception) {
         log.error("Exception Caught in handleRuntimeException: {}", exception.getMessage());
@@ -0,0 +1,83 @@
+package com.reactivespring.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+public class ClientMetrics {
+
+    private static final String[] OUTCOMES = {"SUCCESS", "ERROR", "CANCELLED"};
+
+    final private MeterRegistry meterRegistry;
+    final private String client;
+    final private Counter retries;
+    final private Counter notModified;
+    final private Map<String, Timer[]> timers = new ConcurrentHashMap<>();
+
+    public ClientMetrics(MeterRegistry meterRegistry, String client) {
+        this.meterRegistry = meterRegistry;
+        this.client = client;
+        this.retries = Counter.builder("movies.client.retries")
+                .tag("client", client)
+                .register(meterRegistry);
+        this.notModified = Counter.builder("movies.client.not-modified")
+                .tag("client", client)
+                .register(meterRegistry);
+    }
+
+    public Counter getRetries() {
+        return retries;
+    }
+
+    public Counter getNotModified() {
+        return notModified;
+    }
+
+    public <T> Mono<T> timed(String operation, Mono<T> source) {
+        Timer[] operationTimers = timers(operation);
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return source.doFinally(signalType -> record(operationTimers, signalType, start));
+        });
+    }
+
+    public <T> Flux<T> timed(String operation, Flux<T> source) {
+        Timer[] operationTimers = timers(operation);
+        return Flux.defer(() -> {
+            long start = System.nanoTime();
+            return source.doFinally(signalType -> record(operationTimers, signalType, start));
+        });
+    }
+
+    private void record(Timer[] operationTimers, SignalType signalType, long start) {
+        int outcome = signalType == SignalType.ON_COMPLETE ? 0 : signalType == SignalType.ON_ERROR ? 1 : 2;
+        operationTimers[outcome].record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    private Timer[] timers(String operation) {
+        Timer[] operationTimers = timers.get(operation);
+        if (operationTimers != null) {
+            return operationTimers;
+        }
+        return timers.computeIfAbsent(operation, key -> {
+            Timer[] created = new Timer[OUTCOMES.length];
+            for (int i = 0; i < OUTCOMES.length; i++) {
+                created[i] = Timer.builder("movies.client.requests")
+                        .tag("client", client)
+                        .tag("operation", key)
+                        .tag("outcome", OUTCOMES[i])
+                        .publishPercentiles(0.5, 0.95, 0.99)
+                        .publishPercentileHistogram()
+                        .register(meterRegistry);
+            }
+            return created;
+        });
+    }
+}
@@ -0,0 +1,105 @@
+package com.reactivespring.readmodel;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.reactivespring.cache.MovieInfoCache;
+import com.reactivespring.client.MoviesInfoRestClient;
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieInfoEvent;
+import com.reactivespring.domain.MovieInfoEventType;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.util.retry.Retry;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.Optional;
+
+@Component
+@Slf4j
+public class MovieInfoReadModel {
+
+    final private MoviesInfoRestClient moviesInfoRestClient;
+    final private MovieInfoCache movieInfoCache;
+    final private Cache<String, MovieInfo> movieInfos;
+
+    @Value("${movies.read-model.enabled:true}")
+    private boolean enabled;
+
+    private volatile String lastEventId;
+    private Disposable subscription;
+
+    // held to the cache's bounds, so a missed event can't keep a movie info stale for longer than a cached one
+    public MovieInfoReadModel(MoviesInfoRestClient moviesInfoRestClient, MovieInfoCache movieInfoCache,
+                              @Value("${movies.cache.movie-info.max-size:10000}") long maxSize,
+                              @Value("${movies.cache.movie-info.ttl:10m}") Duration ttl) {
+        this.moviesInfoRestClient = moviesInfoRestClient;
+        this.movieInfoCache = movieInfoCache;
+        this.movieInfos = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .build();
+    }
+
+    public Optional<MovieInfo> findMovieInfo(String movieId) {
+        return Optional.ofNullable(movieInfos.getIfPresent(movieId));
+    }
+
+    public String getLastEventId() {
+        return lastEventId;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (enabled) {
+            start();
+        }
+    }
+
+    public synchronized void start() {
+        if (subscription != null && !subscription.isDisposed()) {
+            return;
+        }
+
+        subscription = Flux.defer(() -> moviesInfoRestClient.retrieveMovieInfoEvents(lastEventId))
+                .doOnNext(this::apply)
+                .doOnError(ex -> log.warn("MovieInfo event stream failed, resuming after event {}: {}", lastEventId, ex.getMessage()))
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1)).maxBackoff(Duration.ofSeconds(30)))
+                .repeatWhen(completed -> completed.delayElements(Duration.ofSeconds(1)))
+                .subscribe();
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        if (subscription != null) {
+            subscription.dispose();
+        }
+    }
+
+    synchronized void clear() {
+        stop();
+        movieInfos.invalidateAll();
+        lastEventId = null;
+    }
+
+    private void apply(MovieInfoEvent event) {
+        // event ids are ObjectId hex strings, so string order is publish order
+        if (lastEventId != null && event.getEventId().compareTo(lastEventId) <= 0) {
+            return;
+        }
+
+        if (event.getType() == MovieInfoEventType.DELETED) {
+            movieInfos.invalidate(event.getMovieInfoId());
+        } else {
+            movieInfos.put(event.getMovieInfoId(), event.getMovieInfo());
+        }
+        movieInfoCache.invalidate(event.getMovieInfoId());
+
+        lastEventId = event.getEventId();
+    }
+}
@@ -0,0 +1,152 @@
+package com.reactivespring.resilience;
+
+import com.reactivespring.exception.DownstreamUnavailableException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
+
+@Slf4j
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    final private String downstream;
+    final private int failureThreshold;
+    final private long openDurationNanos;
+    final private int halfOpenCalls;
+    final private Predicate<Throwable> isFailure;
+    final private Counter rejected;
+
+    final private AtomicReference<State> state = new AtomicReference<>(State.CLOSED);
+    final private AtomicInteger consecutiveFailures = new AtomicInteger();
+    final private AtomicInteger halfOpenPermits = new AtomicInteger();
+    private volatile long openedAt;
+
+    public CircuitBreaker(String downstream, int failureThreshold, Duration openDuration, int halfOpenCalls,
+                          Predicate<Throwable> isFailure, MeterRegistry meterRegistry) {
+        this.downstream = downstream;
+        this.failureThreshold = failureThreshold;
+        this.openDurationNanos = openDuration.toNanos();
+        this.halfOpenCalls = halfOpenCalls;
+        this.isFailure = isFailure;
+
+        Gauge.builder("movies.client.circuit.state", state, current -> current.get().ordinal())
+                .description("0 closed, 1 open, 2 half-open")
+                .tag("downstream", downstream)
+                .register(meterRegistry);
+        this.rejected = Counter.builder("movies.client.circuit.rejected")
+                .tag("downstream", downstream)
+                .register(meterRegistry);
+    }
+
+    public State getState() {
+        return state.get();
+    }
+
+    public void reset() {
+        state.set(State.CLOSED);
+        consecutiveFailures.set(0);
+        halfOpenPermits.set(0);
+    }
+
+    public <T> Mono<T> protect(Mono<T> source) {
+        return Mono.defer(() -> {
+            if (!tryAcquirePermission()) {
+                return Mono.error(rejection());
+            }
+            return source
+                    .doOnSuccess(value -> onSuccess())
+                    .doOnError(this::onError)
+                    .doOnCancel(this::onCancel);
+        });
+    }
+
+    public <T> Flux<T> protect(Flux<T> source) {
+        return Flux.defer(() -> {
+            if (!tryAcquirePermission()) {
+                return Flux.error(rejection());
+            }
+            return source
+                    .doOnComplete(this::onSuccess)
+                    .doOnError(this::onError)
+                    .doOnCancel(this::onCancel);
+        });
+    }
+
+    private boolean tryAcquirePermission() {
+        State current = state.get();
+        if (current == State.CLOSED) {
+            return true;
+        }
+        if (current == State.OPEN) {
+            if (System.nanoTime() - openedAt < openDurationNanos) {
+                return false;
+            }
+            // whoever wins the transition and the next few callers become the half-open probes
+            if (state.compareAndSet(State.OPEN, State.HALF_OPEN)) {
+                log.info("Circuit for {} is half-open", downstream);
+            }
+        }
+        return state.get() != State.OPEN && halfOpenPermits.incrementAndGet() <= halfOpenCalls;
+    }
+
+    private void onSuccess() {
+        if (state.get() == State.HALF_OPEN && state.compareAndSet(State.HALF_OPEN, State.CLOSED)) {
+            log.info("Circuit for {} is closed", downstream);
+        }
+        if (consecutiveFailures.get() != 0) {
+            consecutiveFailures.set(0);
+        }
+    }
+
+    private void onError(Throwable ex) {
+        if (ex instanceof DownstreamUnavailableException) {
+            // rejected further down (e.g. by the concurrency limiter), says nothing about the downstream
+            onCancel();
+            return;
+        }
+        if (!isFailure.test(ex)) {
+            onSuccess();
+            return;
+        }
+
+        State current = state.get();
+        if (current == State.HALF_OPEN) {
+            open(State.HALF_OPEN);
+        } else if (current == State.CLOSED && consecutiveFailures.incrementAndGet() >= failureThreshold) {
+            open(State.CLOSED);
+        }
+    }
+
+    private void onCancel() {
+        // a cancelled probe gives its permit back so the circuit cannot get stuck half-open
+        if (state.get() == State.HALF_OPEN) {
+            halfOpenPermits.decrementAndGet();
+        }
+    }
+
+    private void open(State from) {
+        long now = System.nanoTime();
+        halfOpenPermits.set(0);
+        openedAt = now;
+        if (state.compareAndSet(from, State.OPEN)) {
+            consecutiveFailures.set(0);
+            log.warn("Circuit for {} is open", downstream);
+        }
+    }
+
+    private DownstreamUnavailableException rejection() {
+        rejected.increment();
+        return new DownstreamUnavailableException("Circuit for " + downstream + " is open");
+    }
+}
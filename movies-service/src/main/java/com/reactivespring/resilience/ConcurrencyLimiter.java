@@ -0,0 +1,127 @@
+package com.reactivespring.resilience;
+
+import com.reactivespring.exception.DownstreamUnavailableException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+// AIMD limit on in-flight calls: grows by one while calls are fast and the limit is being used,
+// shrinks by backoffRatio when a call fails or takes longer than latencyThreshold
+public class ConcurrencyLimiter {
+
+    final private String downstream;
+    final private int minLimit;
+    final private int maxLimit;
+    final private int initialLimit;
+    final private double backoffRatio;
+    final private long latencyThresholdNanos;
+    final private Predicate<Throwable> isFailure;
+    final private Counter rejected;
+
+    final private AtomicInteger limit;
+    final private AtomicInteger inFlight = new AtomicInteger();
+
+    public ConcurrencyLimiter(String downstream, int initialLimit, int minLimit, int maxLimit, double backoffRatio,
+                              Duration latencyThreshold, Predicate<Throwable> isFailure, MeterRegistry meterRegistry) {
+        this.downstream = downstream;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.initialLimit = initialLimit;
+        this.backoffRatio = backoffRatio;
+        this.latencyThresholdNanos = latencyThreshold.toNanos();
+        this.isFailure = isFailure;
+        this.limit = new AtomicInteger(initialLimit);
+
+        Gauge.builder("movies.client.limiter.limit", limit, AtomicInteger::get)
+                .tag("downstream", downstream)
+                .register(meterRegistry);
+        Gauge.builder("movies.client.limiter.inflight", inFlight, AtomicInteger::get)
+                .tag("downstream", downstream)
+                .register(meterRegistry);
+        this.rejected = Counter.builder("movies.client.limiter.rejected")
+                .tag("downstream", downstream)
+                .register(meterRegistry);
+    }
+
+    public int getLimit() {
+        return limit.get();
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public void reset() {
+        limit.set(initialLimit);
+    }
+
+    public <T> Mono<T> protect(Mono<T> source) {
+        return Mono.defer(() -> {
+            if (!tryAcquire()) {
+                return Mono.error(rejection());
+            }
+            Call call = new Call();
+            return source
+                    .doOnError(call::onError)
+                    .doFinally(call::release);
+        });
+    }
+
+    public <T> Flux<T> protect(Flux<T> source) {
+        return Flux.defer(() -> {
+            if (!tryAcquire()) {
+                return Flux.error(rejection());
+            }
+            Call call = new Call();
+            return source
+                    .doOnError(call::onError)
+                    .doFinally(call::release);
+        });
+    }
+
+    private boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit.get()) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private DownstreamUnavailableException rejection() {
+        rejected.increment();
+        return new DownstreamUnavailableException("Concurrency limit reached for " + downstream);
+    }
+
+    private class Call {
+        final private long start = System.nanoTime();
+        private volatile boolean failed;
+
+        void onError(Throwable ex) {
+            failed = isFailure.test(ex);
+        }
+
+        void release(SignalType signalType) {
+            int current = inFlight.getAndDecrement();
+            if (signalType == SignalType.CANCEL) {
+                return;
+            }
+
+            if (failed || System.nanoTime() - start > latencyThresholdNanos) {
+                limit.updateAndGet(value -> Math.max(minLimit, (int) (value * backoffRatio)));
+            } else if (current * 2 >= limit.get()) {
+                limit.updateAndGet(value -> Math.min(maxLimit, value + 1));
+            }
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.reactivespring.resilience;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+// circuit breaker outside, so an open circuit fails fast without taking a concurrency permit
+public class DownstreamGuard {
+
+    final private CircuitBreaker circuitBreaker;
+    final private ConcurrencyLimiter concurrencyLimiter;
+
+    public DownstreamGuard(CircuitBreaker circuitBreaker, ConcurrencyLimiter concurrencyLimiter) {
+        this.circuitBreaker = circuitBreaker;
+        this.concurrencyLimiter = concurrencyLimiter;
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public ConcurrencyLimiter getConcurrencyLimiter() {
+        return concurrencyLimiter;
+    }
+
+    public void reset() {
+        circuitBreaker.reset();
+        concurrencyLimiter.reset();
+    }
+
+    public <T> Mono<T> protect(Mono<T> call) {
+        return circuitBreaker.protect(concurrencyLimiter.protect(call));
+    }
+
+    public <T> Flux<T> protect(Flux<T> call) {
+        return circuitBreaker.protect(concurrencyLimiter.protect(call));
+    }
+}
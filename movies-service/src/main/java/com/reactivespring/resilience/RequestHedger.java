@@ -0,0 +1,117 @@
+package com.reactivespring.resilience;
+
+import com.reactivespring.util.RetryBudget;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+// sends a second identical call when the first has not answered within the downstream's recent latency percentile;
+// only for idempotent calls, and hedges draw from their own budget so a slow downstream does not get double the load
+public class RequestHedger {
+
+    private static final long MIN_SAMPLES = 20;
+    private static final long REFRESH_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    final private boolean enabled;
+    final private long minDelayNanos;
+    final private long maxDelayNanos;
+    final private RetryBudget hedgeBudget;
+    final private Timer latency;
+    final private Counter hedges;
+    final private Counter hedgeWins;
+
+    private volatile long delayNanos;
+    private volatile long lastRefresh;
+
+    public RequestHedger(String downstream, boolean enabled, double percentile, Duration minDelay, Duration maxDelay,
+                         double budgetRatio, int maxBudget, MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.minDelayNanos = minDelay.toNanos();
+        this.maxDelayNanos = maxDelay.toNanos();
+        this.delayNanos = maxDelayNanos;
+        this.lastRefresh = System.nanoTime();
+        this.hedgeBudget = new RetryBudget("movies.client.hedge.budget", downstream, budgetRatio, 0, maxBudget, meterRegistry);
+
+        this.latency = Timer.builder("movies.client.hedge.latency")
+                .description("latency of first attempts, used to pick the hedge delay")
+                .tag("downstream", downstream)
+                .publishPercentiles(percentile)
+                .register(meterRegistry);
+        this.hedges = Counter.builder("movies.client.hedges")
+                .tag("downstream", downstream)
+                .register(meterRegistry);
+        this.hedgeWins = Counter.builder("movies.client.hedge.wins")
+                .tag("downstream", downstream)
+                .register(meterRegistry);
+    }
+
+    public void reset() {
+        hedgeBudget.reset();
+    }
+
+    public <T> Mono<T> hedge(Mono<T> call) {
+        if (!enabled) {
+            return call;
+        }
+        return Mono.defer(() -> {
+            hedgeBudget.deposit();
+            long start = System.nanoTime();
+            AtomicBoolean hedgeSent = new AtomicBoolean();
+            AtomicReference<Throwable> firstFailure = new AtomicReference<>();
+
+            // only first attempts feed the percentile, otherwise winning hedges would keep pulling the delay down;
+            // one cancelled by a winning hedge is the slow tail, so it is recorded with the time it had taken so far
+            Mono<T> primary = call
+                    .doFinally(signalType -> {
+                        if (signalType != SignalType.ON_ERROR) {
+                            latency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                        }
+                    })
+                    .onErrorResume(ex -> hedgeSent.get() && firstFailure.compareAndSet(null, ex)
+                            ? Mono.never()
+                            : Mono.error(ex));
+            // whichever attempt fails first waits for the other one, so an error only wins once both have failed
+            Mono<T> hedged = Mono.delay(Duration.ofNanos(hedgeDelayNanos()))
+                    .flatMap(tick -> {
+                        if (!hedgeBudget.tryWithdraw()) {
+                            return Mono.<T>never();
+                        }
+                        hedges.increment();
+                        hedgeSent.set(true);
+                        return call
+                                .doOnSuccess(value -> hedgeWins.increment())
+                                .onErrorResume(ex -> firstFailure.compareAndSet(null, ex)
+                                        ? Mono.never()
+                                        : Mono.error(ex));
+                    });
+
+            return Mono.firstWithSignal(primary, hedged);
+        });
+    }
+
+    long hedgeDelayNanos() {
+        long now = System.nanoTime();
+        if (now - lastRefresh >= REFRESH_NANOS) {
+            lastRefresh = now;
+            delayNanos = computeDelayNanos();
+        }
+        return delayNanos;
+    }
+
+    private long computeDelayNanos() {
+        HistogramSnapshot snapshot = latency.takeSnapshot();
+        if (snapshot.count() < MIN_SAMPLES || snapshot.percentileValues().length == 0) {
+            return maxDelayNanos;
+        }
+        long percentileNanos = (long) snapshot.percentileValues()[0].value(TimeUnit.NANOSECONDS);
+        return Math.max(minDelayNanos, Math.min(maxDelayNanos, percentileNanos));
+    }
+}
@@ -0,0 +1,108 @@
+package com.reactivespring.resilience;
+
+import com.reactivespring.exception.MoviesInfoServerException;
+import com.reactivespring.exception.ReviewsServerException;
+import com.reactivespring.util.RetryBudget;
+import com.reactivespring.util.RetryUtil;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeoutException;
+
+@Component
+public class ResilienceFactory {
+
+    private static final String PREFIX = "movies.resilience.";
+
+    final private Environment environment;
+    final private MeterRegistry meterRegistry;
+    final private List<DownstreamGuard> downstreamGuards = new CopyOnWriteArrayList<>();
+    final private List<RetryBudget> retryBudgets = new CopyOnWriteArrayList<>();
+    final private List<RequestHedger> requestHedgers = new CopyOnWriteArrayList<>();
+
+    public ResilienceFactory(Environment environment, MeterRegistry meterRegistry) {
+        this.environment = environment;
+        this.meterRegistry = meterRegistry;
+    }
+
+    // 4xx responses mean the downstream is healthy, only 5xx, timeouts and connection errors count against it
+    public static boolean isDownstreamFailure(Throwable ex) {
+        return ex instanceof MoviesInfoServerException
+                || ex instanceof ReviewsServerException
+                || ex instanceof WebClientRequestException
+                || ex instanceof TimeoutException;
+    }
+
+    public DownstreamGuard downstreamGuard(String downstream) {
+        DownstreamGuard downstreamGuard = new DownstreamGuard(circuitBreaker(downstream), concurrencyLimiter(downstream));
+        downstreamGuards.add(downstreamGuard);
+        return downstreamGuard;
+    }
+
+    public RetryBudget retryBudget(String downstream) {
+        RetryBudget retryBudget = new RetryBudget(downstream,
+                property(downstream, "retry.budget-ratio", Double.class, 0.1),
+                property(downstream, "retry.min-retries-per-second", Integer.class, 5),
+                property(downstream, "retry.max-budget", Integer.class, 20),
+                meterRegistry);
+        retryBudgets.add(retryBudget);
+        return retryBudget;
+    }
+
+    public Retry retrySpec(String downstream, RetryBudget retryBudget, Counter retries) {
+        return RetryUtil.retrySpec(retryBudget, retries,
+                property(downstream, "retry.max-retries", Integer.class, 3),
+                property(downstream, "retry.min-backoff", Duration.class, Duration.ofMillis(100)),
+                property(downstream, "retry.max-backoff", Duration.class, Duration.ofSeconds(2)));
+    }
+
+    public RequestHedger requestHedger(String downstream) {
+        RequestHedger requestHedger = new RequestHedger(downstream,
+                property(downstream, "hedge.enabled", Boolean.class, false),
+                property(downstream, "hedge.percentile", Double.class, 0.95),
+                property(downstream, "hedge.min-delay", Duration.class, Duration.ofMillis(20)),
+                property(downstream, "hedge.max-delay", Duration.class, Duration.ofSeconds(1)),
+                property(downstream, "hedge.budget-ratio", Double.class, 0.05),
+                property(downstream, "hedge.max-budget", Integer.class, 10),
+                meterRegistry);
+        requestHedgers.add(requestHedger);
+        return requestHedger;
+    }
+
+    public void resetAll() {
+        downstreamGuards.forEach(DownstreamGuard::reset);
+        retryBudgets.forEach(RetryBudget::reset);
+        requestHedgers.forEach(RequestHedger::reset);
+    }
+
+    public CircuitBreaker circuitBreaker(String downstream) {
+        return new CircuitBreaker(downstream,
+                property(downstream, "circuit-breaker.failure-threshold", Integer.class, 5),
+                property(downstream, "circuit-breaker.open-duration", Duration.class, Duration.ofSeconds(10)),
+                property(downstream, "circuit-breaker.half-open-calls", Integer.class, 1),
+                ResilienceFactory::isDownstreamFailure,
+                meterRegistry);
+    }
+
+    public ConcurrencyLimiter concurrencyLimiter(String downstream) {
+        return new ConcurrencyLimiter(downstream,
+                property(downstream, "limiter.initial-limit", Integer.class, 20),
+                property(downstream, "limiter.min-limit", Integer.class, 4),
+                property(downstream, "limiter.max-limit", Integer.class, 200),
+                property(downstream, "limiter.backoff-ratio", Double.class, 0.9),
+                property(downstream, "limiter.latency-threshold", Duration.class, Duration.ofSeconds(1)),
+                ResilienceFactory::isDownstreamFailure,
+                meterRegistry);
+    }
+
+    private <T> T property(String downstream, String key, Class<T> type, T defaultValue) {
+        return environment.getProperty(PREFIX + downstream + "." + key, type, defaultValue);
+    }
+}
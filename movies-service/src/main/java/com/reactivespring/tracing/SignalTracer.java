@@ -0,0 +1,91 @@
+package com.reactivespring.tracing;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+@Component
+@Slf4j
+public class SignalTracer {
+
+    final private boolean enabled;
+    final private double sampleRate;
+    final private Set<String> routes;
+
+    public SignalTracer(@Value("${tracing.enabled:false}") boolean enabled,
+                        @Value("${tracing.sample-rate:0.001}") double sampleRate,
+                        @Value("${tracing.routes:}") Set<String> routes) {
+        this.enabled = enabled;
+        this.sampleRate = sampleRate;
+        this.routes = routes;
+    }
+
+    public <T> Flux<T> trace(String route, Flux<T> source) {
+        if (!isTraced(route)) {
+            return source;
+        }
+        return Flux.defer(() -> {
+            if (!isSampled()) {
+                return source;
+            }
+            Trace trace = new Trace(route);
+            return source
+                    .doOnNext(element -> trace.onNext())
+                    .doFinally(trace::onFinally);
+        });
+    }
+
+    public <T> Mono<T> trace(String route, Mono<T> source) {
+        if (!isTraced(route)) {
+            return source;
+        }
+        return Mono.defer(() -> {
+            if (!isSampled()) {
+                return source;
+            }
+            Trace trace = new Trace(route);
+            return source
+                    .doOnNext(element -> trace.onNext())
+                    .doFinally(trace::onFinally);
+        });
+    }
+
+    private boolean isTraced(String route) {
+        return enabled && (routes.isEmpty() || routes.contains(route));
+    }
+
+    private boolean isSampled() {
+        return sampleRate >= 1.0 || ThreadLocalRandom.current().nextDouble() < sampleRate;
+    }
+
+    private static class Trace {
+        final private String route;
+        final private long subscribedAt = System.nanoTime();
+        private long firstElementAt;
+        private long elements;
+
+        Trace(String route) {
+            this.route = route;
+        }
+
+        void onNext() {
+            if (elements++ == 0) {
+                firstElementAt = System.nanoTime();
+            }
+        }
+
+        void onFinally(SignalType signalType) {
+            long now = System.nanoTime();
+            log.info("trace route={} signal={} elements={} firstElementMicros={} durationMicros={}",
+                    route, signalType, elements,
+                    elements > 0 ? (firstElementAt - subscribedAt) / 1000 : -1,
+                    (now - subscribedAt) / 1000);
+        }
+    }
+}
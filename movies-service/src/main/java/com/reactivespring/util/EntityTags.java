@@ -0,0 +1,44 @@
+package com.reactivespring.util;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Component
+public class EntityTags {
+
+    public static final MediaType SMILE = MediaType.parseMediaType("application/x-jackson-smile");
+
+    final private ObjectMapper objectMapper;
+
+    public EntityTags(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    public MediaType negotiate(List<MediaType> accept) {
+        List<MediaType> sorted = new ArrayList<>(accept);
+        MediaType.sortBySpecificityAndQuality(sorted);
+        for (MediaType mediaType : sorted) {
+            if (mediaType.equalsTypeAndSubtype(SMILE)) {
+                return SMILE;
+            }
+            if (mediaType.isCompatibleWith(MediaType.APPLICATION_JSON)) {
+                break;
+            }
+        }
+        return MediaType.APPLICATION_JSON;
+    }
+
+    public String of(Object body, MediaType contentType) {
+        try {
+            return "\"" + DigestUtils.md5DigestAsHex(objectMapper.writeValueAsBytes(body)) + "-" + contentType.getSubtype() + "\"";
+        } catch (JsonProcessingException ex) {
+            throw new IllegalStateException("Unable to compute ETag", ex);
+        }
+    }
+}
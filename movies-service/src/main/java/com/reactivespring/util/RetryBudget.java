@@ -0,0 +1,78 @@
+package com.reactivespring.util;
+
+import io.micrometer.core.instrument.Clock;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// token bucket shared by all requests to one downstream: every request deposits retryRatio of a token,
+// every retry withdraws a whole one, and minRetriesPerSecond keeps low-traffic services able to retry
+public class RetryBudget {
+
+    private static final long TOKEN = 1000;
+
+    final private long depositPerRequest;
+    final private long refillPerSecond;
+    final private long maxBalance;
+    final private long fullRefillNanos;
+    final private Clock clock;
+
+    final private AtomicLong balance;
+    final private AtomicLong lastRefill;
+
+    public RetryBudget(String downstream, double retryRatio, int minRetriesPerSecond, int maxBudget, MeterRegistry meterRegistry) {
+        this("movies.client.retry.budget", downstream, retryRatio, minRetriesPerSecond, maxBudget, meterRegistry);
+    }
+
+    public RetryBudget(String meterName, String downstream, double retryRatio, int minRetriesPerSecond, int maxBudget,
+                       MeterRegistry meterRegistry) {
+        this.depositPerRequest = (long) (retryRatio * TOKEN);
+        this.refillPerSecond = minRetriesPerSecond * TOKEN;
+        this.maxBalance = maxBudget * TOKEN;
+        // clamped to a full refill so a long idle can't overflow
+        this.fullRefillNanos = refillPerSecond > 0 ? (maxBalance / refillPerSecond + 1) * 1_000_000_000L : 0;
+        this.clock = meterRegistry.config().clock();
+        this.balance = new AtomicLong(maxBalance);
+        this.lastRefill = new AtomicLong(clock.monotonicTime());
+
+        Gauge.builder(meterName, this, budget -> (double) budget.balance.get() / TOKEN)
+                .tag("downstream", downstream)
+                .register(meterRegistry);
+    }
+
+    public void deposit() {
+        add(depositPerRequest);
+    }
+
+    public boolean tryWithdraw() {
+        refill();
+        while (true) {
+            long current = balance.get();
+            if (current < TOKEN) {
+                return false;
+            }
+            if (balance.compareAndSet(current, current - TOKEN)) {
+                return true;
+            }
+        }
+    }
+
+    public void reset() {
+        balance.set(maxBalance);
+        lastRefill.set(clock.monotonicTime());
+    }
+
+    private void refill() {
+        long last = lastRefill.get();
+        long now = clock.monotonicTime();
+        long tokens = Math.min(now - last, fullRefillNanos) * refillPerSecond / 1_000_000_000L;
+        if (tokens > 0 && lastRefill.compareAndSet(last, now)) {
+            add(tokens);
+        }
+    }
+
+    private void add(long tokens) {
+        balance.accumulateAndGet(tokens, (current, delta) -> Math.min(maxBalance, current + delta));
+    }
+}
@@ -2,16 +2,43 @@ package com.reactivespring.util;
 
 import com.reactivespring.exception.MoviesInfoServerException;
 import com.reactivespring.exception.ReviewsServerException;
-import reactor.core.Exceptions;
+import io.micrometer.core.instrument.Counter;
+import reactor.core.publisher.Mono;
 import reactor.util.retry.Retry;
 
 import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
 
 public class RetryUtil {
 
-    public static Retry retrySpec() {
-        return Retry.fixedDelay(3, Duration.ofSeconds(1))
-                .filter(ex -> ex instanceof MoviesInfoServerException || ex instanceof ReviewsServerException)
-                .onRetryExhaustedThrow((retryBackoffSpec1, retrySignal) -> Exceptions.propagate(retrySignal.failure()));
+    // only meant for idempotent GETs; retries back off with decorrelated jitter and stop once the budget is spent
+    public static Retry retrySpec(RetryBudget retryBudget, Counter retries, int maxRetries, Duration minBackoff, Duration maxBackoff) {
+        long min = minBackoff.toMillis();
+        long max = maxBackoff.toMillis();
+
+        return Retry.from(retrySignals -> {
+            long[] previousSleep = {min};
+
+            return retrySignals.concatMap(retrySignal -> {
+                Throwable failure = retrySignal.failure();
+                if (!isRetryable(failure) || retrySignal.totalRetries() >= maxRetries || !retryBudget.tryWithdraw()) {
+                    return Mono.error(failure);
+                }
+
+                previousSleep[0] = decorrelatedJitter(min, max, previousSleep[0]);
+                retries.increment();
+                return Mono.delay(Duration.ofMillis(previousSleep[0]))
+                        .thenReturn(retrySignal);
+            });
+        });
+    }
+
+    static long decorrelatedJitter(long min, long max, long previous) {
+        long upper = Math.max(min + 1, Math.min(max, previous * 3));
+        return ThreadLocalRandom.current().nextLong(min, upper);
+    }
+
+    private static boolean isRetryable(Throwable failure) {
+        return failure instanceof MoviesInfoServerException || failure instanceof ReviewsServerException;
     }
 }
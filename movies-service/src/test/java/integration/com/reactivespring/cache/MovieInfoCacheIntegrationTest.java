@@ -0,0 +1,158 @@
+package com.reactivespring.cache;
+
+import com.github.tomakehurst.wiremock.client.WireMock;
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.exception.MoviesInfoClientException;
+import com.reactivespring.resilience.ResilienceFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cloud.contract.wiremock.AutoConfigureWireMock;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+@AutoConfigureWebTestClient
+@AutoConfigureWireMock(port = 8084)
+@TestPropertySource(
+        properties = {
+                "restClient.moviesInfoUrl=http://localhost:8084/v1/movieinfos",
+                "restClient.reviewsUrl=http://localhost:8084/v1/reviews",
+                "movies.read-model.enabled=false"
+        }
+)
+class MovieInfoCacheIntegrationTest {
+
+    @Autowired
+    private MovieInfoCache movieInfoCache;
+
+    @Autowired
+    private ResilienceFactory resilienceFactory;
+
+    @BeforeEach
+    void setUp() {
+        WireMock.resetAllRequests();
+        movieInfoCache.invalidateAll();
+        resilienceFactory.resetAll();
+    }
+
+    @Test
+    void retrieveMovieInfo_coalescesConcurrentRequests() {
+        String movieId = "abc";
+        stubFor(get(urlPathEqualTo("/v1/movieinfos" + "/" + movieId))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("movieinfo.json")
+                        .withFixedDelay(500)
+                ));
+
+        Flux<MovieInfo> movieInfoFlux = Flux.range(0, 1000)
+                .flatMap(i -> movieInfoCache.retrieveMovieInfo(movieId), 1000);
+
+        StepVerifier.create(movieInfoFlux)
+                .expectNextCount(1000)
+                .verifyComplete();
+
+        StepVerifier.create(movieInfoCache.retrieveMovieInfo(movieId))
+                .assertNext(movieInfo -> assertEquals("Batman Begins", movieInfo.getName()))
+                .verifyComplete();
+
+        WireMock.verify(1, getRequestedFor(urlPathEqualTo("/v1/movieinfos" + "/" + movieId)));
+    }
+
+    @Test
+    void retrieveMovieInfo_cachesNotFound() {
+        String movieId = "def";
+        stubFor(get(urlPathEqualTo("/v1/movieinfos" + "/" + movieId))
+                .willReturn(aResponse()
+                        .withStatus(404)
+                ));
+
+        StepVerifier.create(movieInfoCache.retrieveMovieInfo(movieId))
+                .expectError(MoviesInfoClientException.class)
+                .verify();
+
+        StepVerifier.create(movieInfoCache.retrieveMovieInfo(movieId))
+                .expectErrorMessage("There is no MovieInfo available for the passed Id: def")
+                .verify();
+
+        WireMock.verify(1, getRequestedFor(urlPathEqualTo("/v1/movieinfos" + "/" + movieId)));
+    }
+
+    @Test
+    void retrieveMovieInfo_doesNotCacheServerErrors() {
+        String movieId = "ghi";
+        stubFor(get(urlPathEqualTo("/v1/movieinfos" + "/" + movieId))
+                .willReturn(aResponse()
+                        .withStatus(500)
+                        .withBody("MovieInfo Service Not Available")
+                ));
+
+        StepVerifier.create(movieInfoCache.retrieveMovieInfo(movieId))
+                .expectErrorMessage("Server Exception in MoviesInfoService MovieInfo Service Not Available")
+                .verify();
+
+        WireMock.verify(4, getRequestedFor(urlPathEqualTo("/v1/movieinfos" + "/" + movieId)));
+        WireMock.resetAllRequests();
+        // four failed attempts in a row would otherwise leave the circuit one failure away from opening
+        resilienceFactory.resetAll();
+
+        StepVerifier.create(movieInfoCache.retrieveMovieInfo(movieId))
+                .expectError()
+                .verify();
+
+        WireMock.verify(4, getRequestedFor(urlPathEqualTo("/v1/movieinfos" + "/" + movieId)));
+    }
+
+    @Test
+    void retrieveMovieInfo_revalidatesWithETag() {
+        String movieId = "jkl";
+        stubFor(get(urlPathEqualTo("/v1/movieinfos" + "/" + movieId))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withHeader("ETag", "\"v1\"")
+                        .withBodyFile("movieinfo.json")
+                ));
+        stubFor(get(urlPathEqualTo("/v1/movieinfos" + "/" + movieId))
+                .withHeader("If-None-Match", equalTo("\"v1\""))
+                .willReturn(aResponse()
+                        .withStatus(304)
+                        .withHeader("ETag", "\"v1\"")
+                ));
+
+        movieInfoCache.retrieveMovieInfo(movieId).block();
+        movieInfoCache.invalidate(movieId);
+
+        // the expired entry is revalidated and the 304 is answered from the copy kept with the ETag
+        StepVerifier.create(movieInfoCache.retrieveMovieInfo(movieId))
+                .assertNext(movieInfo -> assertEquals("Batman Begins", movieInfo.getName()))
+                .verifyComplete();
+
+        WireMock.verify(1, getRequestedFor(urlPathEqualTo("/v1/movieinfos" + "/" + movieId))
+                .withHeader("If-None-Match", equalTo("\"v1\"")));
+    }
+
+    @Test
+    void invalidate() {
+        String movieId = "abc";
+        stubFor(get(urlPathEqualTo("/v1/movieinfos" + "/" + movieId))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("movieinfo.json")
+                ));
+
+        movieInfoCache.retrieveMovieInfo(movieId).block();
+        movieInfoCache.invalidate(movieId);
+        movieInfoCache.retrieveMovieInfo(movieId).block();
+
+        WireMock.verify(2, getRequestedFor(urlPathEqualTo("/v1/movieinfos" + "/" + movieId)));
+    }
+}
@@ -0,0 +1,57 @@
+package com.reactivespring.config;
+
+import com.github.tomakehurst.wiremock.client.WireMock;
+import com.reactivespring.client.MoviesInfoRestClient;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cloud.contract.wiremock.AutoConfigureWireMock;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import reactor.test.StepVerifier;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+@AutoConfigureWireMock(port = 8084)
+@TestPropertySource(
+        properties = {
+                "restClient.moviesInfoUrl=http://localhost:8084/v1/movieinfos",
+                "restClient.reviewsUrl=http://localhost:8084/v1/reviews",
+                "movies.read-model.enabled=false"
+        }
+)
+public class WebClientFactoryIntegrationTest {
+
+    @Autowired
+    private MoviesInfoRestClient moviesInfoRestClient;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        WireMock.resetAllRequests();
+    }
+
+    @Test
+    void retrieveMovieInfo_poolMetrics() {
+        String movieId = "pool";
+        stubFor(get(urlPathEqualTo("/v1/movieinfos" + "/" + movieId))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("movieinfo.json")));
+
+        StepVerifier.create(moviesInfoRestClient.retrieveMovieInfo(movieId))
+                .expectNextCount(1)
+                .verifyComplete();
+
+        assertNotNull(meterRegistry.find("reactor.netty.connection.provider.max.connections")
+                .tag("name", "movies-info")
+                .gauge());
+    }
+}
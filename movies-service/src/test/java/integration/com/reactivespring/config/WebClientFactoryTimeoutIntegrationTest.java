@@ -0,0 +1,56 @@
+package com.reactivespring.config;
+
+import com.github.tomakehurst.wiremock.client.WireMock;
+import com.reactivespring.client.MoviesInfoRestClient;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cloud.contract.wiremock.AutoConfigureWireMock;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+@AutoConfigureWireMock(port = 8084)
+@TestPropertySource(
+        properties = {
+                "restClient.moviesInfoUrl=http://localhost:8084/v1/movieinfos",
+                "restClient.reviewsUrl=http://localhost:8084/v1/reviews",
+                "movies.read-model.enabled=false",
+                "movies.http-client.movies-info.response-timeout=500ms",
+                "movies.http-client.movies-info.read-timeout=500ms"
+        }
+)
+public class WebClientFactoryTimeoutIntegrationTest {
+
+    @Autowired
+    private MoviesInfoRestClient moviesInfoRestClient;
+
+    @BeforeEach
+    void setUp() {
+        WireMock.resetAllRequests();
+    }
+
+    @Test
+    void retrieveMovieInfo_responseTimeout() {
+        String movieId = "slow";
+        stubFor(get(urlPathEqualTo("/v1/movieinfos" + "/" + movieId))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("movieinfo.json")
+                        .withFixedDelay(3000)));
+
+        Duration elapsed = StepVerifier.create(moviesInfoRestClient.retrieveMovieInfo(movieId))
+                .expectError()
+                .verify(Duration.ofSeconds(5));
+
+        assertTrue(elapsed.toMillis() < 2000, "took " + elapsed.toMillis() + "ms");
+    }
+}
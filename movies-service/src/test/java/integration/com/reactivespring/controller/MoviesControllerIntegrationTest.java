@@ -1,19 +1,34 @@
 package com.reactivespring.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 import com.github.tomakehurst.wiremock.client.WireMock;
+import com.reactivespring.cache.MovieInfoCache;
 import com.reactivespring.domain.Movie;
+import com.reactivespring.domain.MovieInfo;
+import com.reactivespring.domain.MovieStreamElement;
+import com.reactivespring.domain.Review;
+import com.reactivespring.resilience.ResilienceFactory;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.cloud.contract.wiremock.AutoConfigureWireMock;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.web.reactive.server.WebTestClient;
 
+import java.util.Arrays;
+
 import static com.github.tomakehurst.wiremock.client.WireMock.*;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
 @ActiveProfiles("test")
@@ -22,7 +37,8 @@ import static org.junit.jupiter.api.Assertions.assertNotNull;
 @TestPropertySource(
         properties = {
                 "restClient.moviesInfoUrl=http://localhost:8084/v1/movieinfos",
-                "restClient.reviewsUrl=http://localhost:8084/v1/reviews"
+                "restClient.reviewsUrl=http://localhost:8084/v1/reviews",
+                "movies.read-model.enabled=false"
         }
 )
 public class MoviesControllerIntegrationTest {
@@ -31,21 +47,268 @@ public class MoviesControllerIntegrationTest {
     @Autowired
     private WebTestClient webTestClient;
 
+    @Autowired
+    private MovieInfoCache movieInfoCache;
+
+    @Autowired
+    private ResilienceFactory resilienceFactory;
+
+    @BeforeEach
+    void setUp() {
+        WireMock.resetAllRequests();
+        movieInfoCache.invalidateAll();
+        resilienceFactory.resetAll();
+    }
+
     @Test
     void retrieveMovieById() {
         String movieId = "abc";
-        stubFor(get(urlEqualTo("/v1/movieinfos" + "/" + movieId))
+        stubFor(get(urlPathEqualTo("/v1/movieinfos" + "/" + movieId))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("movieinfo.json")
+                ));
+
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("reviews.json")
+                ));
+
+        webTestClient
+                .get()
+                .uri(MOVIEWS_URL+"/{id}", movieId)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody(Movie.class)
+                .consumeWith(movieEntityExchangeResult -> {
+                    Movie movie = movieEntityExchangeResult.getResponseBody();
+                    assertNotNull(movie);
+                    assertEquals("Batman Begins", movie.getMovieInfo().getName());
+                    assertEquals(2, movie.getReviewList().size());
+                });
+
+        // only the fields Movie uses are requested from movies-info-service
+        WireMock.verify(1, getRequestedFor(urlPathEqualTo("/v1/movieinfos" + "/" + movieId))
+                .withQueryParam("fields", equalTo("name,year,cast")));
+    }
+
+    @Test
+    void retrieveMovieById_smileFromBackends() throws Exception {
+        String movieId = "smile";
+        ObjectMapper smileMapper = new ObjectMapper(new SmileFactory()).findAndRegisterModules();
+        stubFor(get(urlPathEqualTo("/v1/movieinfos" + "/" + movieId))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/x-jackson-smile")
+                        .withBody(smileMapper.writeValueAsBytes(new MovieInfo(movieId, "Batman Begins", 2005,
+                                Arrays.asList("Christian Bale", "Michael Cane"), null)))
+                ));
+
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/x-jackson-smile")
+                        .withBody(smileMapper.writeValueAsBytes(Arrays.asList(
+                                new Review("1", 1L, "Awesome Movie", 9.0),
+                                new Review("2", 1L, "Excellent Movie", 8.0))))
+                ));
+
+        // the aggregate itself still goes out as JSON
+        webTestClient
+                .get()
+                .uri(MOVIEWS_URL+"/{id}", movieId)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectHeader()
+                .contentType(MediaType.APPLICATION_JSON)
+                .expectBody(Movie.class)
+                .consumeWith(movieEntityExchangeResult -> {
+                    Movie movie = movieEntityExchangeResult.getResponseBody();
+                    assertNotNull(movie);
+                    assertEquals("Batman Begins", movie.getMovieInfo().getName());
+                    assertEquals(2, movie.getReviewList().size());
+                });
+
+        WireMock.verify(getRequestedFor(urlPathEqualTo("/v1/movieinfos" + "/" + movieId))
+                .withHeader("Accept", containing("application/x-jackson-smile")));
+        WireMock.verify(getRequestedFor(urlPathEqualTo("/v1/reviews"))
+                .withHeader("Accept", containing("application/x-jackson-smile")));
+    }
+
+    @Test
+    void retrieveMovieById_notModified() {
+        String movieId = "etag";
+        stubFor(get(urlPathEqualTo("/v1/movieinfos" + "/" + movieId))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("movieinfo.json")
+                ));
+
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("reviews.json")
+                ));
+
+        String etag = webTestClient
+                .get()
+                .uri(MOVIEWS_URL+"/{id}", movieId)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .returnResult(Movie.class)
+                .getResponseHeaders()
+                .getETag();
+        assertNotNull(etag);
+
+        webTestClient
+                .get()
+                .uri(MOVIEWS_URL+"/{id}", movieId)
+                .header(HttpHeaders.IF_NONE_MATCH, etag)
+                .exchange()
+                .expectStatus()
+                .isNotModified()
+                .expectBody()
+                .isEmpty();
+    }
+
+    @Test
+    void streamMovieById_ndjson() {
+        String movieId = "abc";
+        stubFor(get(urlPathEqualTo("/v1/movieinfos" + "/" + movieId))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("movieinfo.json")
+                ));
+
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("reviews.json")
+                ));
+
+        webTestClient
+                .get()
+                .uri(MOVIEWS_URL+"/{id}", movieId)
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBodyList(MovieStreamElement.class)
+                .value(elements -> {
+                    assertEquals(3, elements.size());
+                    assertEquals("Batman Begins", elements.get(0).getMovieInfo().getName());
+                    assertNull(elements.get(0).getReview());
+                    assertEquals("Awesome Movie", elements.get(1).getReview().getComment());
+                    assertNull(elements.get(1).getMovieInfo());
+                    assertEquals("Excellent Movie", elements.get(2).getReview().getComment());
+                });
+    }
+
+    @Test
+    void streamMovieById_json() {
+        String movieId = "abc";
+        stubFor(get(urlPathEqualTo("/v1/movieinfos" + "/" + movieId))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("movieinfo.json")
+                ));
+
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("reviews.json")
+                ));
+
+        webTestClient
+                .get()
+                .uri(MOVIEWS_URL+"/{id}?stream=true", movieId)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectHeader()
+                .contentType(MediaType.APPLICATION_JSON)
+                .expectBody(Movie.class)
+                .consumeWith(movieEntityExchangeResult -> {
+                    Movie movie = movieEntityExchangeResult.getResponseBody();
+                    assertNotNull(movie);
+                    assertEquals("Batman Begins", movie.getMovieInfo().getName());
+                    assertEquals(2, movie.getReviewList().size());
+                });
+    }
+
+    @Test
+    void streamMovieById_json_noReviews() {
+        String movieId = "abc";
+        stubFor(get(urlPathEqualTo("/v1/movieinfos" + "/" + movieId))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("movieinfo.json")
+                ));
+
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .willReturn(aResponse()
+                        .withStatus(404)
+                ));
+
+        webTestClient
+                .get()
+                .uri(MOVIEWS_URL+"/{id}?stream=true", movieId)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody(Movie.class)
+                .consumeWith(movieEntityExchangeResult -> {
+                    Movie movie = movieEntityExchangeResult.getResponseBody();
+                    assertNotNull(movie);
+                    assertEquals(0, movie.getReviewList().size());
+                });
+    }
+
+    @Test
+    void streamMovieById_404() {
+        String movieId = "abc";
+        stubFor(get(urlPathEqualTo("/v1/movieinfos" + "/" + movieId))
+                .willReturn(aResponse()
+                        .withStatus(404)
+                ));
+
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("reviews.json")
+                ));
+
+        webTestClient
+                .get()
+                .uri(MOVIEWS_URL+"/{id}?stream=true", movieId)
+                .exchange()
+                .expectStatus()
+                .isNotFound()
+                .expectBody(String.class)
+                .isEqualTo("There is no MovieInfo available for the passed Id: abc");
+    }
+
+    @Test
+    void retrieveMovieById_fetchesConcurrently() {
+        String movieId = "abc";
+        int downstreamDelay = 1500;
+        stubFor(get(urlPathEqualTo("/v1/movieinfos" + "/" + movieId))
                 .willReturn(aResponse()
                         .withHeader("Content-Type", "application/json")
                         .withBodyFile("movieinfo.json")
+                        .withFixedDelay(downstreamDelay)
                 ));
 
         stubFor(get(urlPathEqualTo("/v1/reviews"))
                 .willReturn(aResponse()
                         .withHeader("Content-Type", "application/json")
                         .withBodyFile("reviews.json")
+                        .withFixedDelay(downstreamDelay)
                 ));
 
+        long start = System.currentTimeMillis();
         webTestClient
                 .get()
                 .uri(MOVIEWS_URL+"/{id}", movieId)
@@ -59,12 +322,15 @@ public class MoviesControllerIntegrationTest {
                     assertEquals("Batman Begins", movie.getMovieInfo().getName());
                     assertEquals(2, movie.getReviewList().size());
                 });
+        long elapsed = System.currentTimeMillis() - start;
+
+        assertTrue(elapsed < 2 * downstreamDelay, "Expected overlapping downstream calls but took " + elapsed + "ms");
     }
 
     @Test
     void retrieveMovieById_404() {
         String movieId = "abc";
-        stubFor(get(urlEqualTo("/v1/movieinfos" + "/" + movieId))
+        stubFor(get(urlPathEqualTo("/v1/movieinfos" + "/" + movieId))
                 .willReturn(aResponse()
                         .withStatus(404)
                 ));
@@ -78,13 +344,13 @@ public class MoviesControllerIntegrationTest {
                 .expectBody(String.class)
                 .isEqualTo("There is no MovieInfo available for the passed Id: abc");
 
-        WireMock.verify(1, getRequestedFor(urlEqualTo("/v1/movieinfos" + "/" + movieId)));
+        WireMock.verify(1, getRequestedFor(urlPathEqualTo("/v1/movieinfos" + "/" + movieId)));
     }
 
     @Test
     void retrieveMovieByIdReviews_404() {
         String movieId = "abc";
-        stubFor(get(urlEqualTo("/v1/movieinfos" + "/" + movieId))
+        stubFor(get(urlPathEqualTo("/v1/movieinfos" + "/" + movieId))
                 .willReturn(aResponse()
                         .withHeader("Content-Type", "application/json")
                         .withBodyFile("movieinfo.json")
@@ -113,7 +379,7 @@ public class MoviesControllerIntegrationTest {
     @Test
     void retrieveMovieById_5XX() {
         String movieId = "abc";
-        stubFor(get(urlEqualTo("/v1/movieinfos" + "/" + movieId))
+        stubFor(get(urlPathEqualTo("/v1/movieinfos" + "/" + movieId))
                 .willReturn(aResponse()
                         .withStatus(500)
                         .withBody("MovieInfo Service Not Available")
@@ -128,13 +394,13 @@ public class MoviesControllerIntegrationTest {
                 .expectBody(String.class)
                 .isEqualTo("Server Exception in MoviesInfoService MovieInfo Service Not Available");
 
-        WireMock.verify(4, getRequestedFor(urlEqualTo("/v1/movieinfos" + "/" + movieId)));
+        WireMock.verify(4, getRequestedFor(urlPathEqualTo("/v1/movieinfos" + "/" + movieId)));
     }
 
     @Test
     void retrieveReviews_5XX() {
         String movieId = "abc";
-        stubFor(get(urlEqualTo("/v1/movieinfos" + "/" + movieId))
+        stubFor(get(urlPathEqualTo("/v1/movieinfos" + "/" + movieId))
                 .willReturn(aResponse()
                         .withHeader("Content-Type", "application/json")
                         .withBodyFile("movieinfo.json")
@@ -157,4 +423,70 @@ public class MoviesControllerIntegrationTest {
 
         WireMock.verify(4, getRequestedFor(urlPathMatching("/v1/reviews*")));
     }
+
+    @Test
+    void retrieveMovieById_circuitOpens() {
+        String movieId = "abc";
+        stubFor(get(urlPathEqualTo("/v1/movieinfos" + "/" + movieId))
+                .willReturn(aResponse()
+                        .withStatus(500)
+                        .withBody("MovieInfo Service Not Available")
+                ));
+
+        webTestClient
+                .get()
+                .uri(MOVIEWS_URL+"/{id}", movieId)
+                .exchange()
+                .expectStatus()
+                .is5xxServerError();
+
+        // the fifth consecutive failure opens the circuit, so the remaining retries fail fast
+        webTestClient
+                .get()
+                .uri(MOVIEWS_URL+"/{id}", movieId)
+                .exchange()
+                .expectStatus()
+                .isEqualTo(HttpStatus.SERVICE_UNAVAILABLE)
+                .expectBody(String.class)
+                .isEqualTo("Circuit for movies-info is open");
+
+        WireMock.verify(5, getRequestedFor(urlPathEqualTo("/v1/movieinfos" + "/" + movieId)));
+    }
+
+    @Test
+    void retrieveMoviesByIds() {
+        stubFor(post(urlPathEqualTo("/v1/movieinfos/batch"))
+                .withRequestBody(equalToJson("[\"1\", \"abc\"]"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/x-ndjson")
+                        .withBody("{\"movieInfoId\":\"1\",\"name\":\"Batman Begins\",\"year\":2005,\"cast\":[\"Christian Bale\"]}\n")
+                ));
+
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .withQueryParam("movieInfoIds", equalTo("1"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("reviews.json")
+                ));
+
+        webTestClient
+                .post()
+                .uri(MOVIEWS_URL+"/batch")
+                .bodyValue(Arrays.asList("1", "abc", "1"))
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBodyList(Movie.class)
+                .value(movies -> {
+                    assertEquals(1, movies.size());
+                    assertEquals("Batman Begins", movies.get(0).getMovieInfo().getName());
+                    assertEquals(2, movies.get(0).getReviewList().size());
+                });
+
+        WireMock.verify(1, postRequestedFor(urlPathEqualTo("/v1/movieinfos/batch"))
+                .withQueryParam("fields", equalTo("name,year,cast")));
+        WireMock.verify(0, getRequestedFor(urlPathMatching("/v1/movieinfos/.*")));
+        WireMock.verify(1, getRequestedFor(urlPathEqualTo("/v1/reviews")));
+    }
 }
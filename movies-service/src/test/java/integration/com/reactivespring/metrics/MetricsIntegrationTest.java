@@ -0,0 +1,88 @@
+package com.reactivespring.metrics;
+
+import com.github.tomakehurst.wiremock.client.WireMock;
+import com.reactivespring.cache.MovieInfoCache;
+import com.reactivespring.resilience.ResilienceFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.metrics.AutoConfigureMetrics;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cloud.contract.wiremock.AutoConfigureWireMock;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+@AutoConfigureWebTestClient
+@AutoConfigureMetrics
+@AutoConfigureWireMock(port = 8084)
+@TestPropertySource(
+        properties = {
+                "restClient.moviesInfoUrl=http://localhost:8084/v1/movieinfos",
+                "restClient.reviewsUrl=http://localhost:8084/v1/reviews",
+                "movies.read-model.enabled=false"
+        }
+)
+public class MetricsIntegrationTest {
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @Autowired
+    private MovieInfoCache movieInfoCache;
+
+    @Autowired
+    private ResilienceFactory resilienceFactory;
+
+    @BeforeEach
+    void setUp() {
+        WireMock.resetAllRequests();
+        movieInfoCache.invalidateAll();
+        resilienceFactory.resetAll();
+    }
+
+    @Test
+    void prometheus() {
+        String movieId = "abc";
+        stubFor(get(urlPathEqualTo("/v1/movieinfos" + "/" + movieId))
+                .willReturn(aResponse()
+                        .withStatus(500)
+                        .withBody("MovieInfo Service Unavailable")));
+
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBody("[]")));
+
+        webTestClient
+                .get()
+                .uri("/v1/movies/{id}", movieId)
+                .exchange()
+                .expectStatus()
+                .is5xxServerError();
+
+        webTestClient
+                .get()
+                .uri("/actuator/prometheus")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody(String.class)
+                .consumeWith(result -> {
+                    String body = result.getResponseBody();
+                    assertNotNull(body);
+                    assertTrue(body.contains("movies_client_retries_total{application=\"movies-service\",client=\"moviesInfo\",} 3.0"), body);
+                    assertTrue(body.contains("movies_client_requests_seconds_count{application=\"movies-service\",client=\"moviesInfo\",operation=\"retrieveMovieInfo\",outcome=\"ERROR\",}"), body);
+                    assertTrue(body.contains("movies_client_requests_seconds{application=\"movies-service\",client=\"moviesInfo\",operation=\"retrieveMovieInfo\",outcome=\"ERROR\",quantile=\"0.99\",}"), body);
+                    assertTrue(body.contains("http_server_requests_seconds_bucket{application=\"movies-service\""), body);
+                    assertTrue(body.contains("http_client_requests_seconds_count{application=\"movies-service\""), body);
+                });
+    }
+}
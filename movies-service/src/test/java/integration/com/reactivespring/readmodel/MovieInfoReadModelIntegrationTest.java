@@ -0,0 +1,124 @@
+package com.reactivespring.readmodel;
+
+import com.github.tomakehurst.wiremock.client.WireMock;
+import com.reactivespring.domain.Movie;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cloud.contract.wiremock.AutoConfigureWireMock;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.util.function.BooleanSupplier;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+@AutoConfigureWebTestClient
+@AutoConfigureWireMock(port = 8084)
+@TestPropertySource(
+        properties = {
+                "restClient.moviesInfoUrl=http://localhost:8084/v1/movieinfos",
+                "restClient.reviewsUrl=http://localhost:8084/v1/reviews",
+                "movies.read-model.enabled=false"
+        }
+)
+class MovieInfoReadModelIntegrationTest {
+    private static final String EVENTS_URL = "/v1/movieinfos/events";
+
+    @Autowired
+    private MovieInfoReadModel movieInfoReadModel;
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @BeforeEach
+    void setUp() {
+        WireMock.resetAllRequests();
+        movieInfoReadModel.clear();
+    }
+
+    @AfterEach
+    void tearDown() {
+        movieInfoReadModel.stop();
+    }
+
+    @Test
+    void appliesEventsAndResumesAfterLastEvent() {
+        stubFor(get(urlPathEqualTo(EVENTS_URL))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/x-ndjson")
+                        .withBody(
+                                "{\"eventId\":\"62a0c0f1e4b0a1a2b3c4d5e1\",\"type\":\"SAVED\",\"movieInfoId\":\"1\",\"movieInfo\":{\"movieInfoId\":\"1\",\"name\":\"Batman Begins\",\"year\":2005,\"cast\":[\"Christian Bale\"]}}\n" +
+                                "{\"eventId\":\"62a0c0f1e4b0a1a2b3c4d5e2\",\"type\":\"SAVED\",\"movieInfoId\":\"2\",\"movieInfo\":{\"movieInfoId\":\"2\",\"name\":\"The Dark Knight\",\"year\":2008,\"cast\":[\"Christian Bale\"]}}\n" +
+                                "{\"eventId\":\"62a0c0f1e4b0a1a2b3c4d5e3\",\"type\":\"DELETED\",\"movieInfoId\":\"2\"}\n")
+                ));
+
+        stubFor(get(urlPathEqualTo(EVENTS_URL))
+                .withHeader("Last-Event-ID", equalTo("62a0c0f1e4b0a1a2b3c4d5e3"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/x-ndjson")
+                ));
+
+        movieInfoReadModel.start();
+
+        await(() -> "62a0c0f1e4b0a1a2b3c4d5e3".equals(movieInfoReadModel.getLastEventId()));
+        assertEquals("Batman Begins", movieInfoReadModel.findMovieInfo("1").map(movieInfo -> movieInfo.getName()).orElse(null));
+        assertFalse(movieInfoReadModel.findMovieInfo("2").isPresent());
+
+        await(() -> !WireMock.findAll(getRequestedFor(urlPathEqualTo(EVENTS_URL))
+                .withHeader("Last-Event-ID", equalTo("62a0c0f1e4b0a1a2b3c4d5e3"))).isEmpty());
+    }
+
+    @Test
+    void retrieveMovieById_servedFromReadModel() {
+        stubFor(get(urlPathEqualTo(EVENTS_URL))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/x-ndjson")
+                        .withBody("{\"eventId\":\"62a0c0f1e4b0a1a2b3c4d5f1\",\"type\":\"SAVED\",\"movieInfoId\":\"5\",\"movieInfo\":{\"movieInfoId\":\"5\",\"name\":\"Inception\",\"year\":2010,\"cast\":[\"Leonardo DiCaprio\"]}}\n")
+                ));
+
+        stubFor(get(urlPathEqualTo("/v1/reviews"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBody("[]")
+                ));
+
+        movieInfoReadModel.start();
+        await(() -> movieInfoReadModel.findMovieInfo("5").isPresent());
+
+        webTestClient
+                .get()
+                .uri("/v1/movies/{id}", "5")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody(Movie.class)
+                .consumeWith(movieEntityExchangeResult -> {
+                    Movie movie = movieEntityExchangeResult.getResponseBody();
+                    assertNotNull(movie);
+                    assertEquals("Inception", movie.getMovieInfo().getName());
+                });
+
+        WireMock.verify(0, getRequestedFor(urlPathEqualTo("/v1/movieinfos/5")));
+    }
+
+    private void await(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "Condition not met within 5s");
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                fail(e);
+            }
+        }
+    }
+}
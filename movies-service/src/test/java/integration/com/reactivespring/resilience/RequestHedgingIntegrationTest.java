@@ -0,0 +1,73 @@
+package com.reactivespring.resilience;
+
+import com.github.tomakehurst.wiremock.client.WireMock;
+import com.github.tomakehurst.wiremock.stubbing.Scenario;
+import com.reactivespring.client.MoviesInfoRestClient;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cloud.contract.wiremock.AutoConfigureWireMock;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+@AutoConfigureWireMock(port = 8084)
+@TestPropertySource(
+        properties = {
+                "restClient.moviesInfoUrl=http://localhost:8084/v1/movieinfos",
+                "restClient.reviewsUrl=http://localhost:8084/v1/reviews",
+                "movies.read-model.enabled=false",
+                "movies.resilience.movies-info.hedge.enabled=true",
+                "movies.resilience.movies-info.hedge.max-delay=100ms"
+        }
+)
+public class RequestHedgingIntegrationTest {
+
+    @Autowired
+    private MoviesInfoRestClient moviesInfoRestClient;
+
+    @Autowired
+    private ResilienceFactory resilienceFactory;
+
+    @BeforeEach
+    void setUp() {
+        WireMock.resetAllRequests();
+        WireMock.resetAllScenarios();
+        resilienceFactory.resetAll();
+    }
+
+    @Test
+    void retrieveMovieInfo_slowFirstResponse_hedgeAnswers() {
+        String movieId = "abc";
+        stubFor(get(urlPathEqualTo("/v1/movieinfos" + "/" + movieId))
+                .inScenario("slow-first")
+                .whenScenarioStateIs(Scenario.STARTED)
+                .willSetStateTo("hedged")
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("movieinfo.json")
+                        .withFixedDelay(3000)));
+        stubFor(get(urlPathEqualTo("/v1/movieinfos" + "/" + movieId))
+                .inScenario("slow-first")
+                .whenScenarioStateIs("hedged")
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/json")
+                        .withBodyFile("movieinfo.json")));
+
+        Duration elapsed = StepVerifier.create(moviesInfoRestClient.retrieveMovieInfo(movieId))
+                .assertNext(movieInfo -> assertEquals("Batman Begins", movieInfo.getName()))
+                .verifyComplete();
+
+        assertTrue(elapsed.toMillis() < 2000, "took " + elapsed.toMillis() + "ms");
+        WireMock.verify(2, getRequestedFor(urlPathEqualTo("/v1/movieinfos" + "/" + movieId)));
+    }
+}
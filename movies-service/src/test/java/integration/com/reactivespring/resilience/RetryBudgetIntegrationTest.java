@@ -0,0 +1,69 @@
+package com.reactivespring.resilience;
+
+import com.github.tomakehurst.wiremock.client.WireMock;
+import com.reactivespring.client.MoviesInfoRestClient;
+import com.reactivespring.exception.MoviesInfoServerException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cloud.contract.wiremock.AutoConfigureWireMock;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import reactor.test.StepVerifier;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+@AutoConfigureWireMock(port = 8084)
+@TestPropertySource(
+        properties = {
+                "restClient.moviesInfoUrl=http://localhost:8084/v1/movieinfos",
+                "restClient.reviewsUrl=http://localhost:8084/v1/reviews",
+                "movies.read-model.enabled=false",
+                "movies.resilience.movies-info.circuit-breaker.failure-threshold=100000",
+                "movies.resilience.movies-info.retry.min-backoff=1ms",
+                "movies.resilience.movies-info.retry.max-backoff=5ms",
+                "movies.resilience.movies-info.retry.budget-ratio=0.1",
+                "movies.resilience.movies-info.retry.min-retries-per-second=0",
+                "movies.resilience.movies-info.retry.max-budget=5"
+        }
+)
+public class RetryBudgetIntegrationTest {
+
+    @Autowired
+    private MoviesInfoRestClient moviesInfoRestClient;
+
+    @Autowired
+    private ResilienceFactory resilienceFactory;
+
+    @BeforeEach
+    void setUp() {
+        WireMock.resetAllRequests();
+        resilienceFactory.resetAll();
+    }
+
+    @Test
+    void retrieveMovieInfo_outageDoesNotAmplifyLoad() {
+        String movieId = "abc";
+        stubFor(get(urlPathEqualTo("/v1/movieinfos" + "/" + movieId))
+                .willReturn(aResponse()
+                        .withStatus(500)
+                        .withBody("MovieInfo Service Not Available")));
+
+        int requests = 100;
+        for (int i = 0; i < requests; i++) {
+            StepVerifier.create(moviesInfoRestClient.retrieveMovieInfo(movieId))
+                    .expectError(MoviesInfoServerException.class)
+                    .verify();
+        }
+
+        // without the budget every request would be tried 4 times
+        int calls = WireMock.findAll(getRequestedFor(urlPathEqualTo("/v1/movieinfos" + "/" + movieId))).size();
+        int allowedRetries = 5 + (int) (requests * 0.1);
+        assertTrue(calls >= requests && calls <= requests + allowedRetries,
+                "expected at most " + (requests + allowedRetries) + " calls but got " + calls);
+    }
+}
@@ -0,0 +1,76 @@
+package com.reactivespring.resilience;
+
+import com.reactivespring.exception.DownstreamUnavailableException;
+import com.reactivespring.exception.MoviesInfoClientException;
+import com.reactivespring.exception.MoviesInfoServerException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CircuitBreakerTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final CircuitBreaker circuitBreaker = new CircuitBreaker("movies-info", 3, Duration.ofMillis(200), 1,
+            ResilienceFactory::isDownstreamFailure, meterRegistry);
+
+    @Test
+    void opensAfterConsecutiveFailures_andFailsFast() {
+        AtomicInteger calls = new AtomicInteger();
+        Mono<String> failing = Mono.defer(() -> {
+            calls.incrementAndGet();
+            return Mono.error(new MoviesInfoServerException("boom"));
+        });
+
+        for (int i = 0; i < 3; i++) {
+            StepVerifier.create(circuitBreaker.protect(failing))
+                    .expectError(MoviesInfoServerException.class)
+                    .verify();
+        }
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+
+        StepVerifier.create(circuitBreaker.protect(failing))
+                .expectError(DownstreamUnavailableException.class)
+                .verify();
+        assertEquals(3, calls.get());
+        assertEquals(1, meterRegistry.get("movies.client.circuit.rejected").counter().count());
+        assertEquals(1, meterRegistry.get("movies.client.circuit.state").gauge().value());
+    }
+
+    @Test
+    void clientErrorsDoNotOpen() {
+        Mono<String> notFound = Mono.error(new MoviesInfoClientException("not found", 404));
+
+        for (int i = 0; i < 5; i++) {
+            StepVerifier.create(circuitBreaker.protect(notFound))
+                    .expectError(MoviesInfoClientException.class)
+                    .verify();
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+    }
+
+    @Test
+    void halfOpenProbe_closesOnSuccess_reopensOnFailure() throws InterruptedException {
+        Mono<String> failing = Mono.error(new MoviesInfoServerException("boom"));
+        for (int i = 0; i < 3; i++) {
+            StepVerifier.create(circuitBreaker.protect(failing)).expectError().verify();
+        }
+
+        Thread.sleep(250);
+        StepVerifier.create(circuitBreaker.protect(failing))
+                .expectError(MoviesInfoServerException.class)
+                .verify();
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+
+        Thread.sleep(250);
+        StepVerifier.create(circuitBreaker.protect(Mono.just("ok")))
+                .expectNext("ok")
+                .verifyComplete();
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+    }
+}
@@ -0,0 +1,73 @@
+package com.reactivespring.resilience;
+
+import com.reactivespring.exception.DownstreamUnavailableException;
+import com.reactivespring.exception.ReviewsServerException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ConcurrencyLimiterTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private ConcurrencyLimiter limiter(int initialLimit, Duration latencyThreshold) {
+        return new ConcurrencyLimiter("reviews", initialLimit, 2, 10, 0.5, latencyThreshold,
+                ResilienceFactory::isDownstreamFailure, meterRegistry);
+    }
+
+    @Test
+    void rejectsOverLimit() {
+        ConcurrencyLimiter limiter = limiter(2, Duration.ofSeconds(1));
+        Sinks.One<String> first = Sinks.one();
+        Sinks.One<String> second = Sinks.one();
+
+        limiter.protect(first.asMono()).subscribe();
+        limiter.protect(second.asMono()).subscribe();
+        assertEquals(2, limiter.getInFlight());
+
+        StepVerifier.create(limiter.protect(Mono.just("third")))
+                .expectError(DownstreamUnavailableException.class)
+                .verify();
+
+        first.tryEmitValue("done");
+        second.tryEmitValue("done");
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    void growsWhileFastAndUsed_shrinksOnFailure() {
+        ConcurrencyLimiter limiter = limiter(2, Duration.ofSeconds(1));
+        Sinks.One<String> held = Sinks.one();
+        limiter.protect(held.asMono()).subscribe();
+
+        StepVerifier.create(limiter.protect(Flux.just("a", "b")))
+                .expectNext("a", "b")
+                .verifyComplete();
+        assertEquals(3, limiter.getLimit());
+
+        StepVerifier.create(limiter.protect(Mono.error(new ReviewsServerException("boom"))))
+                .expectError(ReviewsServerException.class)
+                .verify();
+        assertEquals(2, limiter.getLimit());
+        held.tryEmitValue("done");
+    }
+
+    @Test
+    void shrinksOnSlowCalls() {
+        ConcurrencyLimiter limiter = limiter(8, Duration.ofMillis(50));
+
+        StepVerifier.create(limiter.protect(Mono.just("slow").delayElement(Duration.ofMillis(100))))
+                .expectNext("slow")
+                .verifyComplete();
+
+        assertEquals(4, limiter.getLimit());
+        assertEquals(4, meterRegistry.get("movies.client.limiter.limit").gauge().value());
+    }
+}
@@ -0,0 +1,136 @@
+package com.reactivespring.resilience;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RequestHedgerTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    // the first attempt is slow, every later one answers quickly
+    private Mono<String> slowThenFast(AtomicInteger calls) {
+        return Mono.defer(() -> {
+            int attempt = calls.incrementAndGet();
+            return attempt == 1
+                    ? Mono.just("first").delayElement(Duration.ofSeconds(2))
+                    : Mono.just("hedge").delayElement(Duration.ofMillis(10));
+        });
+    }
+
+    @Test
+    void hedge_slowFirstAttempt_takesFasterHedge() {
+        RequestHedger requestHedger = new RequestHedger("movies-info", true, 0.95, Duration.ofMillis(10),
+                Duration.ofMillis(50), 0.05, 5, meterRegistry);
+        AtomicInteger calls = new AtomicInteger();
+
+        Duration elapsed = StepVerifier.create(requestHedger.hedge(slowThenFast(calls)))
+                .expectNext("hedge")
+                .verifyComplete();
+
+        assertTrue(elapsed.toMillis() < 1000, "took " + elapsed.toMillis() + "ms");
+        assertEquals(2, calls.get());
+        assertEquals(1.0, meterRegistry.get("movies.client.hedge.wins").counter().count());
+        // the cancelled first attempt still counts towards the hedge delay
+        assertEquals(1L, meterRegistry.get("movies.client.hedge.latency").timer().count());
+    }
+
+    @Test
+    void hedge_fastFirstAttempt_noHedge() {
+        RequestHedger requestHedger = new RequestHedger("movies-info", true, 0.95, Duration.ofMillis(10),
+                Duration.ofMillis(200), 0.05, 5, meterRegistry);
+        AtomicInteger calls = new AtomicInteger();
+
+        StepVerifier.create(requestHedger.hedge(Mono.fromCallable(() -> "first" + calls.incrementAndGet())))
+                .expectNext("first1")
+                .verifyComplete();
+
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void hedge_budgetSpent_waitsForFirstAttempt() {
+        RequestHedger requestHedger = new RequestHedger("movies-info", true, 0.95, Duration.ofMillis(10),
+                Duration.ofMillis(50), 0.0, 1, meterRegistry);
+        AtomicInteger calls = new AtomicInteger();
+
+        StepVerifier.create(requestHedger.hedge(slowThenFast(calls)))
+                .expectNext("hedge")
+                .verifyComplete();
+
+        calls.set(0);
+        StepVerifier.create(requestHedger.hedge(slowThenFast(calls)))
+                .expectNext("first")
+                .verifyComplete();
+
+        assertEquals(1, calls.get());
+        assertEquals(1.0, meterRegistry.get("movies.client.hedges").counter().count());
+    }
+
+    @Test
+    void hedge_failedHedge_leavesAnswerToFirstAttempt() {
+        RequestHedger requestHedger = new RequestHedger("movies-info", true, 0.95, Duration.ofMillis(10),
+                Duration.ofMillis(50), 0.05, 5, meterRegistry);
+        AtomicInteger calls = new AtomicInteger();
+        Mono<String> call = Mono.defer(() -> calls.incrementAndGet() == 1
+                ? Mono.just("first").delayElement(Duration.ofMillis(300))
+                : Mono.error(new IllegalStateException("boom")));
+
+        StepVerifier.create(requestHedger.hedge(call))
+                .expectNext("first")
+                .verifyComplete();
+
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void hedge_firstAttemptFailsWhileHedgeInFlight_takesHedge() {
+        RequestHedger requestHedger = new RequestHedger("movies-info", true, 0.95, Duration.ofMillis(10),
+                Duration.ofMillis(50), 0.05, 5, meterRegistry);
+        AtomicInteger calls = new AtomicInteger();
+        Mono<String> call = Mono.defer(() -> calls.incrementAndGet() == 1
+                ? Mono.<String>error(new IllegalStateException("boom")).delaySubscription(Duration.ofMillis(100))
+                : Mono.just("hedge").delayElement(Duration.ofMillis(200)));
+
+        StepVerifier.create(requestHedger.hedge(call))
+                .expectNext("hedge")
+                .verifyComplete();
+
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void hedge_bothAttemptsFail_propagatesError() {
+        RequestHedger requestHedger = new RequestHedger("movies-info", true, 0.95, Duration.ofMillis(10),
+                Duration.ofMillis(50), 0.05, 5, meterRegistry);
+        AtomicInteger calls = new AtomicInteger();
+        Mono<String> call = Mono.defer(() -> Mono.<String>error(new IllegalStateException("boom" + calls.incrementAndGet()))
+                .delaySubscription(Duration.ofMillis(100)));
+
+        StepVerifier.create(requestHedger.hedge(call))
+                .expectErrorMessage("boom2")
+                .verify(Duration.ofSeconds(5));
+
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void hedge_disabled_singleAttempt() {
+        RequestHedger requestHedger = new RequestHedger("movies-info", false, 0.95, Duration.ofMillis(10),
+                Duration.ofMillis(50), 0.05, 5, meterRegistry);
+        AtomicInteger calls = new AtomicInteger();
+
+        StepVerifier.create(requestHedger.hedge(slowThenFast(calls)))
+                .expectNext("first")
+                .verifyComplete();
+
+        assertEquals(1, calls.get());
+    }
+}
@@ -0,0 +1,63 @@
+package com.reactivespring.util;
+
+import io.micrometer.core.instrument.MockClock;
+import io.micrometer.core.instrument.simple.SimpleConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RetryBudgetTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void withdrawsUntilEmpty_thenEarnsRetriesFromRequests() {
+        RetryBudget retryBudget = new RetryBudget("movies-info", 0.5, 0, 2, meterRegistry);
+
+        assertTrue(retryBudget.tryWithdraw());
+        assertTrue(retryBudget.tryWithdraw());
+        assertFalse(retryBudget.tryWithdraw());
+
+        retryBudget.deposit();
+        assertFalse(retryBudget.tryWithdraw());
+        retryBudget.deposit();
+        assertTrue(retryBudget.tryWithdraw());
+    }
+
+    @Test
+    void balanceIsCapped_andReset() {
+        RetryBudget retryBudget = new RetryBudget("movies-info", 1.0, 0, 2, meterRegistry);
+
+        for (int i = 0; i < 10; i++) {
+            retryBudget.deposit();
+        }
+        assertEquals(2.0, meterRegistry.get("movies.client.retry.budget").gauge().value());
+
+        retryBudget.tryWithdraw();
+        retryBudget.tryWithdraw();
+        retryBudget.reset();
+        assertEquals(2.0, meterRegistry.get("movies.client.retry.budget").gauge().value());
+    }
+
+    @Test
+    void refillsAfterVeryLongIdle() {
+        MockClock clock = new MockClock();
+        SimpleMeterRegistry clockedRegistry = new SimpleMeterRegistry(SimpleConfig.DEFAULT, clock);
+        RetryBudget retryBudget = new RetryBudget("movies-info", 0.0, 5, 2, clockedRegistry);
+
+        assertTrue(retryBudget.tryWithdraw());
+        assertTrue(retryBudget.tryWithdraw());
+        assertFalse(retryBudget.tryWithdraw());
+
+        // long enough for elapsed nanos * refill rate to overflow a long
+        clock.add(Duration.ofDays(30));
+
+        assertTrue(retryBudget.tryWithdraw());
+        assertEquals(1.0, clockedRegistry.get("movies.client.retry.budget").gauge().value());
+    }
+}
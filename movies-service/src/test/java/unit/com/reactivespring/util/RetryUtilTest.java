@@ -0,0 +1,17 @@
+package com.reactivespring.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RetryUtilTest {
+
+    @Test
+    void decorrelatedJitter_staysWithinBounds() {
+        long previous = 100;
+        for (int i = 0; i < 1000; i++) {
+            previous = RetryUtil.decorrelatedJitter(100, 2000, previous);
+            assertTrue(previous >= 100 && previous < 2000, "sleep " + previous);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.learnreactiveprogramming.benchmark;
+
+import org.openjdk.jmh.annotations.Param;
+
+public class FlatteningBenchmark extends FlatteningPipelines {
+
+    @Param({"1", "1000", "100000", "1000000"})
+    public int size;
+
+    @Param({"1", "10", "100"})
+    public int innerSize;
+
+    @Param({"plain", "debugAgent"})
+    public String mode;
+
+    @Override
+    protected int size() {
+        return size;
+    }
+
+    @Override
+    protected int innerSize() {
+        return innerSize;
+    }
+
+    @Override
+    protected String mode() {
+        return mode;
+    }
+}
@@ -0,0 +1,43 @@
+package com.learnreactiveprogramming.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Warmup;
+import reactor.core.publisher.Flux;
+
+// the pipelines shared by FlatteningBenchmark and LoggedFlatteningBenchmark, which differ only in their params
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public abstract class FlatteningPipelines extends PipelineBenchmarkSupport {
+
+    // outer elements; the pipeline emits size * innerSize elements in total
+    protected abstract int size();
+
+    protected abstract int innerSize();
+
+    @Benchmark
+    public Integer flatMap() {
+        return observed(Flux.range(0, size())
+                .flatMap(i -> Flux.range(i, innerSize())))
+                .blockLast();
+    }
+
+    @Benchmark
+    public Integer concatMap() {
+        return observed(Flux.range(0, size())
+                .concatMap(i -> Flux.range(i, innerSize())))
+                .blockLast();
+    }
+
+    @Benchmark
+    public Integer flatMapSequential() {
+        return observed(Flux.range(0, size())
+                .flatMapSequential(i -> Flux.range(i, innerSize())))
+                .blockLast();
+    }
+}
@@ -0,0 +1,28 @@
+package com.learnreactiveprogramming.benchmark;
+
+import org.openjdk.jmh.annotations.Param;
+
+// .log() writes a line per signal, so it only runs on sizes whose output stays small
+public class LoggedFlatteningBenchmark extends FlatteningPipelines {
+
+    @Param({"1", "100", "1000"})
+    public int size;
+
+    @Param({"1", "10", "100"})
+    public int innerSize;
+
+    @Override
+    protected int size() {
+        return size;
+    }
+
+    @Override
+    protected int innerSize() {
+        return innerSize;
+    }
+
+    @Override
+    protected String mode() {
+        return "log";
+    }
+}
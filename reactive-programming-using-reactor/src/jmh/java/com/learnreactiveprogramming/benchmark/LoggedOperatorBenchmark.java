@@ -0,0 +1,20 @@
+package com.learnreactiveprogramming.benchmark;
+
+import org.openjdk.jmh.annotations.Param;
+
+// .log() writes a line per signal, so it only runs on sizes whose output stays small
+public class LoggedOperatorBenchmark extends OperatorPipelines {
+
+    @Param({"1", "1000", "10000"})
+    public int size;
+
+    @Override
+    protected int size() {
+        return size;
+    }
+
+    @Override
+    protected String mode() {
+        return "log";
+    }
+}
@@ -0,0 +1,22 @@
+package com.learnreactiveprogramming.benchmark;
+
+import org.openjdk.jmh.annotations.Param;
+
+public class OperatorBenchmark extends OperatorPipelines {
+
+    @Param({"1", "1000", "1000000", "10000000"})
+    public int size;
+
+    @Param({"plain", "debugAgent"})
+    public String mode;
+
+    @Override
+    protected int size() {
+        return size;
+    }
+
+    @Override
+    protected String mode() {
+        return mode;
+    }
+}
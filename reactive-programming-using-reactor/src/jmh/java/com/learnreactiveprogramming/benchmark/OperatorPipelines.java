@@ -0,0 +1,60 @@
+package com.learnreactiveprogramming.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Warmup;
+import reactor.core.publisher.Flux;
+
+import java.util.function.Function;
+
+// the pipelines shared by OperatorBenchmark and LoggedOperatorBenchmark, which differ only in their params
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public abstract class OperatorPipelines extends PipelineBenchmarkSupport {
+
+    protected abstract int size();
+
+    @Benchmark
+    public Integer mapFilter() {
+        return observed(Flux.range(0, size())
+                .map(i -> i * 2)
+                .filter(i -> i % 3 == 0))
+                .blockLast();
+    }
+
+    @Benchmark
+    public Integer transform() {
+        Function<Flux<Integer>, Flux<Integer>> mapFilter = flux -> flux
+                .map(i -> i * 2)
+                .filter(i -> i % 3 == 0);
+
+        return observed(Flux.range(0, size())
+                .transform(mapFilter))
+                .blockLast();
+    }
+
+    @Benchmark
+    public Integer merge() {
+        int half = size() / 2;
+        return observed(Flux.merge(Flux.range(0, half), Flux.range(half, size() - half)))
+                .blockLast();
+    }
+
+    @Benchmark
+    public Integer mergeSequential() {
+        int half = size() / 2;
+        return observed(Flux.mergeSequential(Flux.range(0, half), Flux.range(half, size() - half)))
+                .blockLast();
+    }
+
+    @Benchmark
+    public Integer zip() {
+        return observed(Flux.zip(Flux.range(0, size()), Flux.range(0, size()), Integer::sum))
+                .blockLast();
+    }
+}
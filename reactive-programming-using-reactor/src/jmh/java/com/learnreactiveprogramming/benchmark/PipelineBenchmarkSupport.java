@@ -0,0 +1,28 @@
+package com.learnreactiveprogramming.benchmark;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import reactor.core.publisher.Flux;
+import reactor.tools.agent.ReactorDebugAgent;
+
+@State(Scope.Benchmark)
+public abstract class PipelineBenchmarkSupport {
+
+    // plain: the pipeline as is, log: with .log() appended, debugAgent: with the reactor-tools agent installed
+    protected abstract String mode();
+
+    @Setup(Level.Trial)
+    public void installDebugAgent() {
+        // each trial runs in its own fork, so the agent never leaks into the other modes
+        if ("debugAgent".equals(mode())) {
+            ReactorDebugAgent.init();
+            ReactorDebugAgent.processExistingClasses();
+        }
+    }
+
+    protected <T> Flux<T> observed(Flux<T> pipeline) {
+        return "log".equals(mode()) ? pipeline.log() : pipeline;
+    }
+}